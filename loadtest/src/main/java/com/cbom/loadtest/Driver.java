@@ -0,0 +1,146 @@
+package com.cbom.loadtest;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Open-loop load generator: submits scans at a fixed rate regardless of how
+ * fast the service completes them, and polls each job until it finishes.
+ */
+final class Driver {
+    private static final ObjectMapper M = new ObjectMapper();
+
+    /** Timings of one scan, in nanoseconds on the driver's clock (0 = not observed). */
+    static final class Job {
+        final String id;
+        final long submitted;
+        volatile long started;
+        volatile long finished;
+        volatile String status = "QUEUED";
+        volatile JsonNode last;
+
+        Job(String id, long submitted) {
+            this.id = id;
+            this.submitted = submitted;
+        }
+    }
+
+    private final HttpClient http = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(5)).build();
+    private final String api;
+    private final List<String> repos;
+    private final Map<String, Job> jobs = new ConcurrentHashMap<>();
+    final AtomicInteger rejected = new AtomicInteger();
+
+    Driver(String api, List<String> repos) {
+        this.api = api;
+        this.repos = repos;
+    }
+
+    List<Job> run(double rate, int durationSeconds, Duration drainTimeout) throws Exception {
+        ScheduledExecutorService exec = Executors.newScheduledThreadPool(2);
+        AtomicInteger next = new AtomicInteger();
+        long periodNanos = (long) (1_000_000_000L / rate);
+        long total = (long) (rate * durationSeconds);
+        List<CompletableFuture<?>> submissions = new ArrayList<>();
+        exec.scheduleAtFixedRate(() -> {
+            int n = next.getAndIncrement();
+            if (n < total) {
+                synchronized (submissions) {
+                    submissions.add(submit(repos.get(n % repos.size())));
+                }
+            }
+        }, 0, periodNanos, TimeUnit.NANOSECONDS);
+        exec.scheduleWithFixedDelay(this::poll, 200, 200, TimeUnit.MILLISECONDS);
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(durationSeconds) + drainTimeout.toNanos();
+        while (System.nanoTime() < deadline) {
+            Thread.sleep(500);
+            if (next.get() >= total && allSubmitted(submissions) && jobs.values().stream().allMatch(j -> j.finished > 0)) {
+                break;
+            }
+        }
+        exec.shutdownNow();
+        return new ArrayList<>(jobs.values());
+    }
+
+    private static boolean allSubmitted(List<CompletableFuture<?>> submissions) {
+        synchronized (submissions) {
+            return submissions.stream().allMatch(CompletableFuture::isDone);
+        }
+    }
+
+    private CompletableFuture<?> submit(String repoUrl) {
+        long at = System.nanoTime();
+        String body = M.createObjectNode().put("repoUrl", repoUrl).put("branch", "main").toString();
+        HttpRequest req = HttpRequest.newBuilder(URI.create(api + "/api/v1/scans"))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .build();
+        return http.sendAsync(req, HttpResponse.BodyHandlers.ofString()).thenAccept(resp -> {
+            if (resp.statusCode() != 202) {
+                rejected.incrementAndGet();
+                return;
+            }
+            try {
+                String id = M.readTree(resp.body()).path("id").asText();
+                jobs.put(id, new Job(id, at));
+            } catch (Exception e) {
+                rejected.incrementAndGet();
+            }
+        }).exceptionally(e -> {
+            rejected.incrementAndGet();
+            return null;
+        });
+    }
+
+    private void poll() {
+        List<CompletableFuture<?>> inFlight = new ArrayList<>();
+        for (Job job : jobs.values()) {
+            if (job.finished > 0) {
+                continue;
+            }
+            HttpRequest req = HttpRequest.newBuilder(URI.create(api + "/api/v1/scans/" + job.id)).GET().build();
+            inFlight.add(http.sendAsync(req, HttpResponse.BodyHandlers.ofString()).thenAccept(resp -> {
+                if (resp.statusCode() != 200) {
+                    return;
+                }
+                try {
+                    JsonNode node = M.readTree(resp.body());
+                    observe(job, node.path("status").asText(), node);
+                } catch (Exception ignored) {
+                }
+            }));
+        }
+        try {
+            CompletableFuture.allOf(inFlight.toArray(new CompletableFuture[0])).get(30, TimeUnit.SECONDS);
+        } catch (Exception ignored) {
+        }
+    }
+
+    private static void observe(Job job, String status, JsonNode node) {
+        long now = System.nanoTime();
+        if (!"QUEUED".equals(status) && job.started == 0) {
+            job.started = now;
+        }
+        if ("COMPLETED".equals(status) || "FAILED".equals(status)) {
+            job.last = node;
+            job.status = status;
+            job.finished = now;
+        }
+    }
+}
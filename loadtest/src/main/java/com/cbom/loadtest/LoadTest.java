@@ -0,0 +1,114 @@
+package com.cbom.loadtest;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.ToLongFunction;
+
+/**
+ * End-to-end load test of the scan service. See loadtest/README.md.
+ */
+public final class LoadTest {
+
+    private LoadTest() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> opts = parse(args);
+        Path workdir = Files.createDirectories(Path.of(opts.getOrDefault("workdir", "loadtest/target/work")));
+        int repos = Integer.parseInt(opts.getOrDefault("repos", "20"));
+        int files = Integer.parseInt(opts.getOrDefault("files", "40"));
+        double rate = Double.parseDouble(opts.getOrDefault("rate", "2"));
+        int duration = Integer.parseInt(opts.getOrDefault("duration", "60"));
+        Duration drain = Duration.ofSeconds(Long.parseLong(opts.getOrDefault("drain-timeout", "600")));
+
+        List<String> urls = SyntheticRepos.generate(Files.createDirectories(workdir.resolve("repos")), repos, files);
+        System.out.printf("Generated %d repos x %d files under %s%n", repos, files, workdir.resolve("repos"));
+
+        Stack stack = opts.containsKey("start-stack") ? new Stack(opts, workdir) : null;
+        try {
+            String api = stack != null ? stack.apiUrl : opts.getOrDefault("api", "http://localhost:8080");
+            System.out.printf("Submitting %.1f scans/s for %ds to %s%n", rate, duration, api);
+            Driver driver = new Driver(api, urls);
+            List<Driver.Job> jobs = driver.run(rate, duration, drain);
+            report(jobs, driver.rejected.get(), workdir);
+        } finally {
+            if (stack != null) {
+                stack.close();
+            }
+        }
+    }
+
+    private static void report(List<Driver.Job> jobs, int rejected, Path workdir) throws Exception {
+        List<Driver.Job> done = new ArrayList<>();
+        long failed = 0;
+        long first = Long.MAX_VALUE, last = Long.MIN_VALUE;
+        for (Driver.Job j : jobs) {
+            if (j.finished == 0) {
+                continue;
+            }
+            done.add(j);
+            if ("FAILED".equals(j.status)) {
+                failed++;
+            }
+            first = Math.min(first, j.submitted);
+            last = Math.max(last, j.finished);
+        }
+        StringBuilder out = new StringBuilder();
+        out.append(String.format(Locale.ROOT, "submitted %d, rejected %d, finished %d (failed %d), unfinished %d%n",
+                jobs.size() + rejected, rejected, done.size(), failed, jobs.size() - done.size()));
+        if (!done.isEmpty()) {
+            double seconds = (last - first) / 1e9;
+            out.append(String.format(Locale.ROOT, "throughput %.2f jobs/s over %.1fs%n", done.size() / seconds,
+                    seconds));
+            out.append(String.format(Locale.ROOT, "%-12s %9s %9s %9s %9s%n", "ms", "p50", "p90", "p99", "max"));
+            row(out, "queue", done, j -> (j.started > 0 ? j.started : j.finished) - j.submitted);
+            row(out, "run", done, j -> j.started > 0 ? j.finished - j.started : 0);
+            row(out, "end-to-end", done, j -> j.finished - j.submitted);
+            // server-side breakdown from the scanMetrics each job reports
+            for (String phase : new String[] { "clone", "classify", "language", "semgrep", "cbom" }) {
+                List<Driver.Job> timed = done.stream()
+                        .filter(j -> j.last != null && j.last.path("scanMetrics").path("phases").has(phase)).toList();
+                if (!timed.isEmpty()) {
+                    row(out, "  " + phase, timed,
+                            j -> j.last.path("scanMetrics").path("phases").path(phase).asLong() * 1_000_000);
+                }
+            }
+        }
+        System.out.print(out);
+        Files.writeString(workdir.resolve("report.txt"), out);
+    }
+
+    static void row(StringBuilder out, String name, List<Driver.Job> jobs, ToLongFunction<Driver.Job> nanos) {
+        long[] v = jobs.stream().mapToLong(nanos).sorted().toArray();
+        out.append(String.format(Locale.ROOT, "%-12s %9.0f %9.0f %9.0f %9.0f%n", name,
+                pct(v, 50) / 1e6, pct(v, 90) / 1e6, pct(v, 99) / 1e6, v[v.length - 1] / 1e6));
+    }
+
+    /** Nearest-rank percentile of a sorted array. */
+    static long pct(long[] sorted, int p) {
+        int rank = (int) Math.ceil(p / 100.0 * sorted.length);
+        return sorted[Math.max(0, rank - 1)];
+    }
+
+    private static Map<String, String> parse(String[] args) {
+        Map<String, String> opts = new HashMap<>();
+        for (String a : args) {
+            if (!a.startsWith("--")) {
+                throw new IllegalArgumentException("Unexpected argument: " + a);
+            }
+            int eq = a.indexOf('=');
+            if (eq < 0) {
+                opts.put(a.substring(2), "true");
+            } else {
+                opts.put(a.substring(2, eq), a.substring(eq + 1));
+            }
+        }
+        return opts;
+    }
+}
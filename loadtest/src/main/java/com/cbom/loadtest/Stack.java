@@ -0,0 +1,117 @@
+package com.cbom.loadtest;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.testcontainers.containers.PostgreSQLContainer;
+
+/**
+ * Postgres (Testcontainers or an existing database) plus one API process and
+ * N worker processes of the service jar, all wired to the stub semgrep.
+ */
+final class Stack implements AutoCloseable {
+    private static final String LISTENING = "[Worker] Listening on channels";
+    private final List<Process> processes = new ArrayList<>();
+    private PostgreSQLContainer<?> postgres;
+    final String apiUrl;
+
+    Stack(Map<String, String> opts, Path workdir) throws Exception {
+        String jdbcUrl = opts.getOrDefault("postgres", "testcontainers");
+        String user = opts.getOrDefault("db-user", "cbom");
+        String password = opts.getOrDefault("db-password", "cbom123");
+        if ("testcontainers".equals(jdbcUrl)) {
+            postgres = new PostgreSQLContainer<>("postgres:15").withDatabaseName("cbomdb")
+                    .withUsername(user).withPassword(password);
+            postgres.start();
+            jdbcUrl = postgres.getJdbcUrl();
+        }
+        int port = Integer.parseInt(opts.getOrDefault("port", "18080"));
+        int workers = Integer.parseInt(opts.getOrDefault("workers", "1"));
+        apiUrl = "http://localhost:" + port;
+
+        Map<String, String> env = Map.of(
+                "DB_URL", jdbcUrl,
+                "DB_USERNAME", user,
+                "DB_PASSWORD", password,
+                "STUB_SEMGREP_STARTUP_MS", opts.getOrDefault("startup-ms", "1500"),
+                "STUB_SEMGREP_FILE_US", opts.getOrDefault("file-us", "2000"),
+                "STUB_SEMGREP_FINDINGS", opts.getOrDefault("findings", "20"));
+        Path jar = Path.of(opts.getOrDefault("jar", "target/app.jar")).toAbsolutePath();
+        String stub = Path.of("loadtest/stub-semgrep.sh").toAbsolutePath().toString();
+        List<String> common = List.of(
+                "--spring.flyway.enabled=true",
+                "--scanner.semgrep.script=" + stub,
+                "--logging.level.org.hibernate.SQL=INFO");
+
+        // migrations run in the API before workers start
+        List<String> api = new ArrayList<>(List.of("java", "-jar", jar.toString(), "--server.port=" + port,
+                "--scanner.dispatch=" + (workers > 0 ? "notify" : "inline")));
+        api.addAll(common);
+        start(api, env, workdir.resolve("api.log"));
+        awaitHttp(apiUrl + "/api/v1/scans/00000000-0000-0000-0000-000000000000", Duration.ofMinutes(2));
+
+        List<Path> workerLogs = new ArrayList<>();
+        for (int w = 0; w < workers; w++) {
+            List<String> worker = new ArrayList<>(List.of("java", "-jar", jar.toString(), "--worker",
+                    "--scanner.workspace.root=" + workdir.resolve("workspaces-" + w).toAbsolutePath()));
+            worker.addAll(common);
+            workerLogs.add(workdir.resolve("worker-" + w + ".log"));
+            start(worker, env, workerLogs.get(w));
+        }
+        // a worker only hears notifications sent after it issued LISTEN; scans submitted earlier stay QUEUED
+        for (Path log : workerLogs) {
+            awaitLog(log, LISTENING, Duration.ofMinutes(2));
+        }
+    }
+
+    private void start(List<String> cmd, Map<String, String> env, Path log) throws IOException {
+        ProcessBuilder pb = new ProcessBuilder(cmd).redirectErrorStream(true)
+                .redirectOutput(log.toFile());
+        pb.environment().putAll(env);
+        processes.add(pb.start());
+    }
+
+    private static void awaitHttp(String url, Duration timeout) throws Exception {
+        HttpClient http = HttpClient.newHttpClient();
+        long deadline = System.nanoTime() + timeout.toNanos();
+        while (System.nanoTime() < deadline) {
+            try {
+                http.send(HttpRequest.newBuilder(URI.create(url)).build(), HttpResponse.BodyHandlers.discarding());
+                return;
+            } catch (IOException notYet) {
+                Thread.sleep(500);
+            }
+        }
+        throw new IllegalStateException("API did not come up at " + url);
+    }
+
+    private static void awaitLog(Path log, String line, Duration timeout) throws Exception {
+        long deadline = System.nanoTime() + timeout.toNanos();
+        while (System.nanoTime() < deadline) {
+            if (Files.exists(log) && Files.readString(log).contains(line)) {
+                return;
+            }
+            Thread.sleep(500);
+        }
+        throw new IllegalStateException("Worker did not start listening, see " + log);
+    }
+
+    @Override
+    public void close() {
+        for (Process p : processes) {
+            p.destroy();
+        }
+        if (postgres != null) {
+            postgres.stop();
+        }
+    }
+}
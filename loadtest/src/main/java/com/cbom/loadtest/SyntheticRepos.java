@@ -0,0 +1,65 @@
+package com.cbom.loadtest;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Generates small git repositories of Java sources with typical JCA calls,
+ * served to the scanner over file:// URLs.
+ */
+final class SyntheticRepos {
+    private static final String[] SNIPPETS = {
+            "MessageDigest.getInstance(\"SHA-256\")",
+            "MessageDigest.getInstance(\"MD5\")",
+            "Cipher.getInstance(\"AES/ECB/PKCS5Padding\")",
+            "Cipher.getInstance(\"AES/GCM/NoPadding\")",
+            "KeyPairGenerator.getInstance(\"RSA\")",
+    };
+
+    private SyntheticRepos() {
+    }
+
+    static List<String> generate(Path root, int repos, int filesPerRepo) throws IOException, InterruptedException {
+        List<String> urls = new ArrayList<>();
+        for (int r = 0; r < repos; r++) {
+            Path repo = root.resolve("repo-" + r);
+            if (!Files.isDirectory(repo.resolve(".git"))) {
+                Path src = Files.createDirectories(repo.resolve("src/main/java/demo"));
+                for (int f = 0; f < filesPerRepo; f++) {
+                    Files.writeString(src.resolve("Crypto" + f + ".java"), source(f, r));
+                }
+                git(repo, "init", "-q", "-b", "main");
+                git(repo, "add", ".");
+                git(repo, "-c", "user.name=loadtest", "-c", "user.email=loadtest@localhost", "commit", "-q", "-m",
+                        "synthetic");
+            }
+            urls.add(repo.toUri().toString());
+        }
+        return urls;
+    }
+
+    private static String source(int file, int repo) {
+        StringBuilder sb = new StringBuilder("package demo;\n\nimport java.security.*;\nimport javax.crypto.*;\n\n")
+                .append("public class Crypto").append(file).append(" {\n");
+        for (int m = 0; m < 3; m++) {
+            sb.append("    Object m").append(m).append("() throws Exception {\n")
+                    .append("        return ").append(SNIPPETS[(file + m + repo) % SNIPPETS.length]).append(";\n")
+                    .append("    }\n\n");
+        }
+        return sb.append("}\n").toString();
+    }
+
+    private static void git(Path dir, String... args) throws IOException, InterruptedException {
+        List<String> cmd = new ArrayList<>();
+        cmd.add("git");
+        cmd.addAll(List.of(args));
+        Process p = new ProcessBuilder(cmd).directory(dir.toFile()).redirectErrorStream(true)
+                .redirectOutput(ProcessBuilder.Redirect.DISCARD).start();
+        if (p.waitFor() != 0) {
+            throw new IOException("git " + String.join(" ", args) + " failed in " + dir);
+        }
+    }
+}
@@ -0,0 +1,57 @@
+#!/bin/sh
+
+# Drop-in stand-in for scanner-scripts/run-semgrep.sh used by the load test.
+# Usage: stub-semgrep.sh <workspace> <rules.yml> <language> [target...]
+# Writes <workspace>/semgrep-out.json in semgrep's JSON shape without running semgrep.
+#
+# STUB_SEMGREP_STARTUP_MS  fixed cost per invocation (process start + rule compilation), default 1500
+# STUB_SEMGREP_FILE_US     cost per scanned file in microseconds, default 2000
+# STUB_SEMGREP_FINDINGS    findings per target, default 20
+set -e
+
+WORKSPACE="${1:-/tmp/repo}"
+RULES="${2:-}"
+LANG="${3:-generic}"
+if [ $# -gt 3 ]; then
+    shift 3
+else
+    set -- "$WORKSPACE"
+fi
+
+STARTUP_MS="${STUB_SEMGREP_STARTUP_MS:-1500}"
+FILE_US="${STUB_SEMGREP_FILE_US:-2000}"
+FINDINGS="${STUB_SEMGREP_FINDINGS:-20}"
+
+RULE_IDS="java-jca-sha256-sha512 java-jca-md5-sha1 java-aes-ecb java-deprecated-rsa java-keygen"
+
+OUT="$WORKSPACE/semgrep-out.json.tmp"
+FILES=0
+FIRST=1
+printf '{"version":"stub","errors":[],"results":[' > "$OUT"
+for TARGET in "$@"; do
+    LIST=$(find "$TARGET" -type f -not -path '*/.git/*' -not -name 'semgrep-out.json*' | sort)
+    COUNT=$(printf '%s\n' "$LIST" | grep -c . || true)
+    FILES=$((FILES + COUNT))
+    [ "$COUNT" -gt 0 ] || continue
+    i=0
+    while [ "$i" -lt "$FINDINGS" ]; do
+        FILE=$(printf '%s\n' "$LIST" | sed -n "$(( i % COUNT + 1 ))p")
+        set -- $RULE_IDS
+        SHIFT=$(( i % $# ))
+        while [ "$SHIFT" -gt 0 ]; do shift; SHIFT=$((SHIFT - 1)); done
+        RULE="$1"
+        LINE=$(( i / COUNT + 3 ))
+        [ "$FIRST" -eq 1 ] || printf ',' >> "$OUT"
+        FIRST=0
+        printf '{"check_id":"%s","path":"%s","start":{"line":%d,"col":9,"offset":0},"end":{"line":%d,"col":60,"offset":0},"extra":{"message":"stub finding","severity":"WARNING","language":"%s","lines":"MessageDigest.getInstance(\\"SHA-256\\");","metadata":{}}}' \
+            "$RULE" "$FILE" "$LINE" "$LINE" "$LANG" >> "$OUT"
+        i=$((i + 1))
+    done
+done
+printf '],"paths":{"scanned":[]}}\n' >> "$OUT"
+
+# simulated semgrep cost: startup once per invocation, plus per file
+DELAY_MS=$(( STARTUP_MS + FILES * FILE_US / 1000 ))
+sleep "$(awk "BEGIN { printf \"%.3f\", $DELAY_MS / 1000 }")"
+
+mv "$OUT" "$WORKSPACE/semgrep-out.json"
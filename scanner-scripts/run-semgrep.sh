@@ -1,11 +1,19 @@
 #!/bin/sh
 
-# Usage: run-semgrep.sh <workspace> <rules.yml> <language>
+# Usage: run-semgrep.sh <workspace> <rules.yml> <language> [target...]
+# Output is written to <workspace>/semgrep-out.json. When targets are given
+# (batched scans) all of them are scanned in one invocation; otherwise the
+# workspace itself is the target.
 set -e
 
 WORKSPACE="${1:-/tmp/repo}"
 RULES="${2:-/app/scanner-scripts/rules}"
 LANG="${3:-generic}"
+if [ $# -gt 3 ]; then
+    shift 3
+else
+    set -- "$WORKSPACE"
+fi
 
 EXCLUDES=""
 
@@ -32,7 +40,7 @@ esac
 
 
 # Print the semgrep command for debugging
-echo "semgrep --config \"$RULES\" --json  $EXCLUDES \"$WORKSPACE\"\n" 
+echo "semgrep --config \"$RULES\" --json  $EXCLUDES $*\n" 
 #echo "Semgrep is:"
 #which semgrep
 #chmod +x $(which semgrep)
@@ -42,6 +50,6 @@ echo "semgrep --config \"$RULES\" --json  $EXCLUDES \"$WORKSPACE\"\n"
 semgrep --config "$RULES" \
     --json --output "$WORKSPACE/semgrep-out.json" \
     $EXCLUDES \
-    "$WORKSPACE" --verbose >/dev/null 2>&1 || true
+    "$@" --verbose >/dev/null 2>&1 || true
 
 #cat "$WORKSPACE/semgrep-out.json" 2>/dev/null || echo "{}"
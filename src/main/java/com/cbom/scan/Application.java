@@ -2,23 +2,41 @@ package com.cbom.scan;
 
 import com.cbom.scan.worker.PostgresListener;
 import org.springframework.boot.SpringApplication;
+import org.springframework.boot.WebApplicationType;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.builder.SpringApplicationBuilder;
 import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.core.SpringProperties;
+import org.springframework.scheduling.annotation.EnableScheduling;
+import org.springframework.util.ClassUtils;
 import java.util.Arrays;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 @SpringBootApplication
+@EnableScheduling
 public class Application {
     private static final Logger log = LoggerFactory.getLogger(Application.class);
+    private static final String AOT_INITIALIZER = Application.class.getName() + "__ApplicationContextInitializer";
 
     public static void main(String[] args) {
         boolean workerMode = Arrays.asList(args).contains("--worker");
-        ConfigurableApplicationContext ctx = SpringApplication.run(Application.class, args);
         if (workerMode) {
+            // -Paot builds process this worker context; the API context differs, so only the worker uses them
+            if (SpringProperties.getProperty("spring.aot.enabled") == null && !Boolean.getBoolean("spring.aot.processing")
+                    && ClassUtils.isPresent(AOT_INITIALIZER, Application.class.getClassLoader())) {
+                SpringProperties.setProperty("spring.aot.enabled", "true");
+            }
+            // Headless: no embedded Tomcat, beans the listener does not need are never created
+            ConfigurableApplicationContext ctx = new SpringApplicationBuilder(Application.class)
+                    .web(WebApplicationType.NONE)
+                    .lazyInitialization(true)
+                    .profiles("worker")
+                    .run(args);
             log.info("[Worker] Starting LISTEN/NOTIFY worker...");
             ctx.getBean(PostgresListener.class).start();
         } else {
+            SpringApplication.run(Application.class, args);
             log.info("[API] Starting REST API...");
         }
     }
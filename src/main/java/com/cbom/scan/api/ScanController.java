@@ -1,11 +1,23 @@
 package com.cbom.scan.api;
 
 import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
 
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.jdbc.core.JdbcTemplate;
@@ -14,10 +26,16 @@ import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import com.cbom.scan.model.ScanIds;
 import com.cbom.scan.model.ScanJob;
+import com.cbom.scan.model.ScanStatus;
 import com.cbom.scan.repo.ScanJobRepository;
+import com.cbom.scan.service.CbomDiffService;
 import com.cbom.scan.service.ReportService;
 import com.cbom.scan.service.ScannerService;
 
@@ -29,19 +47,26 @@ public class ScanController {
     private final JdbcTemplate jdbc;
     private final ReportService reportService;
     private final ScannerService scannerService;
+    private final CbomDiffService diffService;
+    private final boolean inlineWorker;
 
     public ScanController(ScanJobRepository repo, JdbcTemplate jdbc, ReportService reportService,
-            ScannerService scannerService) {
+            ScannerService scannerService, CbomDiffService diffService,
+            @Value("${scanner.dispatch:inline}") String dispatch) {
         this.repo = repo;
         this.jdbc = jdbc;
         this.reportService = reportService;
         this.scannerService = scannerService;
+        this.diffService = diffService;
+        this.inlineWorker = !"notify".equalsIgnoreCase(dispatch);
     }
 
     @PostMapping
     public ResponseEntity<?> create(@RequestBody CreateScan req) {
         ScanJob job = new ScanJob();
-        job.setId(UUID.randomUUID());
+        // created_at is the millisecond encoded in the id, so lookups by id can prune partitions
+        Instant now = Instant.now().truncatedTo(ChronoUnit.MILLIS);
+        job.setId(ScanIds.newId(now));
         job.setRepoUrl(req.repoUrl());
         // Prefer branch; fallback to ref (tag/sha)
         String resolvedRef = (req.branch() != null && !req.branch().isBlank())
@@ -49,57 +74,89 @@ public class ScanController {
                 : req.ref();
         job.setRef(resolvedRef);
         job.setTool(req.tool() == null ? "semgrep" : req.tool());
-        job.setStatus("QUEUED");
-        job.setCreatedAt(Instant.now());
-        job.setUpdatedAt(Instant.now());
+        job.setStatus(ScanStatus.QUEUED.name());
+        job.setCreatedAt(now);
+        job.setUpdatedAt(now);
         repo.save(job);
 
-        // Inline worker. comment if worker is run as separate service
-        new Thread(() -> {
-            try {
-                scannerService.run(job.getId());
-            } catch (Exception e) {
-                // Optionally log the error
-                e.printStackTrace();
-            }
-        }).start();
-
-        // jdbc.execute(String.format("SELECT pg_notify('scan_jobs','%s')",
-        // job.getId().toString()));
+        if (inlineWorker) {
+            // Inline worker. Set scanner.dispatch=notify if worker is run as separate service
+            new Thread(() -> {
+                try {
+                    scannerService.run(job.getId());
+                } catch (Exception e) {
+                    // Optionally log the error
+                    e.printStackTrace();
+                }
+            }).start();
+        } else {
+            jdbc.queryForList("SELECT pg_notify('scan_jobs', ?)", job.getId().toString());
+        }
         return ResponseEntity.accepted().body(Map.of("id", job.getId(), "status", job.getStatus()));
     }
 
     @GetMapping("/{id}")
     public ResponseEntity<?> status(@PathVariable("id") UUID id) {
-        Optional<ScanJob> job = repo.findById(id);
+        Optional<ScanJob> job = repo.findJob(id);
         return job.<ResponseEntity<?>>map(ResponseEntity::ok).orElseGet(() -> ResponseEntity.notFound().build());
     }
 
     @GetMapping("/{id}/json")
-    public ResponseEntity<String> mergedJson(@PathVariable("id") UUID id) {
-        return repo.findById(id)
-                .map(job -> ResponseEntity.ok(reportService.buildMergedJson(job)))
-                .orElse(ResponseEntity.notFound().build());
+    public ResponseEntity<StreamingResponseBody> mergedJson(@PathVariable("id") UUID id,
+            @RequestHeader HttpHeaders headers) {
+        return serve(id, ReportService.Output.MERGED, headers);
     }
 
     @GetMapping("/{id}/cbom/json")
-    public ResponseEntity<String> cbomJson(@PathVariable("id") UUID id) {
-        return repo.findById(id)
-                .map(job -> {
-                    String cbom = reportService.buildCbomJson(job);
-                    if (cbom == null || cbom.isBlank()) {
-                        return ResponseEntity.noContent().<String>build();
-                    }
-                    return ResponseEntity.ok()
-                            .contentType(MediaType.APPLICATION_JSON)
-                            .body(cbom);
-                })
-                .orElse(ResponseEntity.notFound().build());
+    public ResponseEntity<StreamingResponseBody> cbomJson(@PathVariable("id") UUID id,
+            @RequestHeader HttpHeaders headers) {
+        return serve(id, ReportService.Output.CBOM, headers);
+    }
+
+    /** Crypto assets added, removed and changed from scan {@code a} to scan {@code b}. */
+    @GetMapping("/{a}/diff/{b}")
+    public ResponseEntity<?> diff(@PathVariable("a") UUID a, @PathVariable("b") UUID b,
+            @RequestParam(name = "limit", defaultValue = "100") int limit) {
+        return diffService.diff(a, b, limit)
+                .<ResponseEntity<?>>map(d -> ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(d))
+                .orElseGet(() -> ResponseEntity.notFound().build());
+    }
+
+    /**
+     * Bulk export of the CBOMs of completed scans created between {@code from}
+     * and {@code to} (inclusive, default the last day), in the encoding picked
+     * by the Accept header: NDJSON, Smile, a CBOR sequence or length-delimited
+     * protobuf messages. {@code limit} must be positive (400 otherwise). Each
+     * CBOM is taken from its stored encoding, none is parsed from JSON.
+     */
+    @GetMapping("/cbom/export")
+    public ResponseEntity<StreamingResponseBody> export(
+            @RequestParam(name = "repoUrl", required = false) String repoUrl,
+            @RequestParam(name = "from", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(name = "to", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+            @RequestParam(name = "limit", defaultValue = "1000") int limit,
+            @RequestHeader HttpHeaders headers) {
+        if (limit < 1) {
+            return ResponseEntity.badRequest().build();
+        }
+        Optional<ReportService.Encoding> encoding = negotiate(headers, ReportService.Output.CBOM, true);
+        if (encoding.isEmpty()) {
+            return ResponseEntity.status(HttpStatus.NOT_ACCEPTABLE).build();
+        }
+        LocalDate end = to != null ? to : LocalDate.now(ZoneOffset.UTC);
+        LocalDate start = from != null ? from : end;
+        Instant since = start.atStartOfDay(ZoneOffset.UTC).toInstant();
+        Instant until = end.plusDays(1).atStartOfDay(ZoneOffset.UTC).toInstant();
+        String repo = repoUrl == null || repoUrl.isBlank() ? null : repoUrl;
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(encoding.get().sequenceMediaType()))
+                .varyBy(HttpHeaders.ACCEPT)
+                .body(out -> reportService.export(repo, since, until, limit, encoding.get(), out));
     }
 
     @GetMapping("/{id}/report.pdf")
     public ResponseEntity<byte[]> pdf(@PathVariable("id") UUID id) {
-        return repo.findById(id)
+        return repo.findJob(id)
                 .map(job -> {
                     byte[] pdf = reportService.generatePdf(job);
                     return ResponseEntity.ok()
@@ -114,18 +171,94 @@ public class ScanController {
     }
 
     @GetMapping("/{id}/cbom")
-    public ResponseEntity<?> cbom(@PathVariable("id") UUID id) {
-        return repo.findById(id)
-                .map(job -> {
-                    String cbom = job.getCbomkitOutput();
-                    if (cbom == null || cbom.isBlank()) {
-                        return ResponseEntity.noContent().build(); // 204
-                    }
-                    return ResponseEntity.ok()
-                            .contentType(MediaType.APPLICATION_JSON)
-                            .body(cbom);
-                })
-                .orElseGet(() -> ResponseEntity.notFound().build());
+    public ResponseEntity<StreamingResponseBody> cbom(@PathVariable("id") UUID id,
+            @RequestHeader HttpHeaders headers) {
+        return serve(id, ReportService.Output.CBOM, headers);
+    }
+
+    /**
+     * Serve a stored document in the encoding picked by the Accept header
+     * (JSON, Smile or CBOR, and CycloneDX protobuf for the CBOM). A CBOM is
+     * sent as stored in that encoding; the merged document is composed around
+     * it (see {@link ReportService#write}). The ETag is the content digest (per encoding and
+     * content coding); finished scans never change, so their responses are
+     * marked immutable and revalidations are answered from the digest alone.
+     * Bodies are gzip-compressed when the client accepts it.
+     */
+    private ResponseEntity<StreamingResponseBody> serve(UUID id, ReportService.Output output, HttpHeaders headers) {
+        Optional<ReportService.Encoding> negotiated = negotiate(headers, output, false);
+        if (negotiated.isEmpty()) {
+            return ResponseEntity.status(HttpStatus.NOT_ACCEPTABLE).build();
+        }
+        ReportService.Encoding encoding = negotiated.get();
+        Optional<ReportService.Digest> found = reportService.digest(id, output);
+        if (found.isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+        ReportService.Digest digest = found.get();
+        if (digest.etag() == null) {
+            return ResponseEntity.noContent().build(); // 204
+        }
+        String acceptEncoding = headers.getFirst(HttpHeaders.ACCEPT_ENCODING);
+        boolean gzip = acceptEncoding != null && acceptEncoding.toLowerCase().contains("gzip");
+        String etag = "\"" + digest.etag()
+                + (encoding == ReportService.Encoding.JSON ? "" : "-" + encoding.name().toLowerCase())
+                + (gzip ? "-gz" : "") + "\"";
+        CacheControl cache = digest.immutable()
+                ? CacheControl.maxAge(365, TimeUnit.DAYS).cachePublic().immutable()
+                : CacheControl.noCache();
+
+        List<String> ifNoneMatch = headers.getIfNoneMatch();
+        if (ifNoneMatch.contains(etag) || ifNoneMatch.contains("*")) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).cacheControl(cache)
+                    .varyBy(HttpHeaders.ACCEPT, HttpHeaders.ACCEPT_ENCODING).build();
+        }
+        ResponseEntity.BodyBuilder ok = ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(encoding.mediaType()))
+                .eTag(etag)
+                .cacheControl(cache)
+                .varyBy(HttpHeaders.ACCEPT, HttpHeaders.ACCEPT_ENCODING);
+        if (gzip) {
+            ok.header(HttpHeaders.CONTENT_ENCODING, "gzip");
+        }
+        return ok.body(out -> {
+            if (gzip) {
+                try (GZIPOutputStream zip = new GZIPOutputStream(out, 64 * 1024)) {
+                    reportService.write(id, output, encoding, zip);
+                }
+            } else {
+                reportService.write(id, output, encoding, out);
+            }
+        });
+    }
+
+    /**
+     * First encoding of {@code output}, by quality, that the Accept header
+     * allows; JSON when the header is absent. Empty when nothing acceptable is
+     * offered (e.g. only protobuf is asked for the merged document).
+     */
+    private static Optional<ReportService.Encoding> negotiate(HttpHeaders headers, ReportService.Output output,
+            boolean sequence) {
+        List<MediaType> accept = new ArrayList<>(headers.getAccept());
+        if (accept.isEmpty()) {
+            return Optional.of(ReportService.Encoding.JSON);
+        }
+        accept.sort(Comparator.comparingDouble(MediaType::getQualityValue).reversed());
+        for (MediaType wanted : accept) {
+            if (wanted.getQualityValue() == 0) {
+                continue;
+            }
+            for (ReportService.Encoding encoding : ReportService.Encoding.values()) {
+                if (output == ReportService.Output.MERGED && !encoding.servesMerged()) {
+                    continue;
+                }
+                if (wanted.includes(MediaType.parseMediaType(encoding.mediaType()))
+                        || sequence && wanted.includes(MediaType.parseMediaType(encoding.sequenceMediaType()))) {
+                    return Optional.of(encoding);
+                }
+            }
+        }
+        return Optional.empty();
     }
 
 }
@@ -0,0 +1,43 @@
+package com.cbom.scan.api;
+
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.cbom.scan.service.ScoreHistoryService;
+
+@RestController
+@RequestMapping("/api/v1/scores")
+public class ScoreController {
+
+    private final ScoreHistoryService scores;
+
+    public ScoreController(ScoreHistoryService scores) {
+        this.scores = scores;
+    }
+
+    /** Daily score rollups for one repo, or for the whole fleet when repoUrl is omitted. */
+    @GetMapping("/daily")
+    public ResponseEntity<?> daily(@RequestParam(name = "repoUrl", required = false) String repoUrl,
+            @RequestParam(name = "from", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(name = "to", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to) {
+        LocalDate end = to != null ? to : LocalDate.now(ZoneOffset.UTC);
+        LocalDate start = from != null ? from : end.minusDays(30);
+        if (repoUrl == null || repoUrl.isBlank()) {
+            return ResponseEntity.ok(scores.fleetDaily(start, end));
+        }
+        return ResponseEntity.ok(scores.daily(repoUrl, start, end));
+    }
+
+    @GetMapping("/history")
+    public ResponseEntity<?> history(@RequestParam("repoUrl") String repoUrl,
+            @RequestParam(name = "limit", defaultValue = "100") int limit) {
+        return ResponseEntity.ok(scores.history(repoUrl, limit));
+    }
+}
@@ -0,0 +1,54 @@
+package com.cbom.scan.model;
+
+import java.security.SecureRandom;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.Random;
+import java.util.UUID;
+
+/**
+ * Scan job ids are UUIDv7 (RFC 9562): the first 48 bits are the job's
+ * created_at in epoch milliseconds. scan_job is partitioned on created_at, so
+ * every lookup by id also bounds created_at to the millisecond the id carries
+ * and Postgres prunes to a single partition. Ids minted before this scheme
+ * (version 4) carry no time and fall back to an unbounded window.
+ */
+public final class ScanIds {
+    /** SQL predicate for a single job; bind {@link #args(UUID)}. */
+    public static final String BY_ID = "id = ? AND created_at >= ? AND created_at < ?";
+
+    private static final Random RANDOM = new SecureRandom();
+    private static final Instant MIN = Instant.EPOCH;
+    private static final Instant MAX = Instant.parse("9999-12-31T00:00:00Z");
+
+    private ScanIds() {
+    }
+
+    /** Created_at range {@code [from, to)} that holds the job with a given id. */
+    public record Window(Instant from, Instant to) {
+    }
+
+    /** A new id for a job created at {@code createdAt}, which is truncated to the millisecond. */
+    public static UUID newId(Instant createdAt) {
+        long millis = createdAt.toEpochMilli();
+        long msb = (millis << 16) | 0x7000L | (RANDOM.nextInt() & 0x0fffL);
+        long lsb = (RANDOM.nextLong() & 0x3fffffffffffffffL) | 0x8000000000000000L;
+        return new UUID(msb, lsb);
+    }
+
+    /** The creation time an id was minted for, or null for ids that carry none. */
+    public static Instant createdAt(UUID id) {
+        return id.version() == 7 ? Instant.ofEpochMilli(id.getMostSignificantBits() >>> 16) : null;
+    }
+
+    public static Window window(UUID id) {
+        Instant at = createdAt(id);
+        return at == null ? new Window(MIN, MAX) : new Window(at, at.plusMillis(1));
+    }
+
+    /** Bind values for {@link #BY_ID}. */
+    public static Object[] args(UUID id) {
+        Window w = window(id);
+        return new Object[] { id, Timestamp.from(w.from()), Timestamp.from(w.to()) };
+    }
+}
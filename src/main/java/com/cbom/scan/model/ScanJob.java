@@ -4,16 +4,22 @@ import java.time.Instant;
 import java.util.UUID;
 
 import org.hibernate.annotations.JdbcTypeCode;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonRawValue;
 import org.hibernate.type.SqlTypes;
+import org.springframework.data.domain.Persistable;
 
 import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
 import jakarta.persistence.Id;
+import jakarta.persistence.PostLoad;
+import jakarta.persistence.PostPersist;
 import jakarta.persistence.Table;
+import jakarta.persistence.Transient;
 
 @Entity
 @Table(name = "scan_job")
-public class ScanJob {
+public class ScanJob implements Persistable<UUID> {
     @Id
     private UUID id;
 
@@ -39,7 +45,35 @@ public class ScanJob {
     private String errorMessage;
     private String detectedLanguage;
 
+    // phase durations, workspace size, file and finding counts (see ScanTimer)
+    @JdbcTypeCode(SqlTypes.JSON)
+    @Column(columnDefinition = "jsonb", name = "scan_metrics")
+    private String scanMetrics;
+
+    // content digests of the served documents, written with the results (see ReportService.etag)
+    @Column(name = "cbom_etag")
+    private String cbomEtag;
+    @Column(name = "merged_etag")
+    private String mergedEtag;
+
+    // ids are assigned (see ScanIds): save() must insert, not merge, which would look the id up in every partition
+    @Transient
+    private boolean isNew = true;
+
+    @Override
+    @JsonIgnore
+    public boolean isNew() {
+        return isNew;
+    }
+
+    @PostLoad
+    @PostPersist
+    void markNotNew() {
+        this.isNew = false;
+    }
+
     // getters/setters
+    @Override
     public UUID getId() {
         return id;
     }
@@ -135,4 +169,31 @@ public class ScanJob {
     public void setDetectedLanguage(String detectedLanguage) {
         this.detectedLanguage = detectedLanguage;
     }
+
+    @JsonRawValue
+    public String getScanMetrics() {
+        return scanMetrics;
+    }
+
+    public void setScanMetrics(String scanMetrics) {
+        this.scanMetrics = scanMetrics;
+    }
+
+    @JsonIgnore
+    public String getCbomEtag() {
+        return cbomEtag;
+    }
+
+    public void setCbomEtag(String cbomEtag) {
+        this.cbomEtag = cbomEtag;
+    }
+
+    @JsonIgnore
+    public String getMergedEtag() {
+        return mergedEtag;
+    }
+
+    public void setMergedEtag(String mergedEtag) {
+        this.mergedEtag = mergedEtag;
+    }
 }
@@ -0,0 +1,38 @@
+package com.cbom.scan.model;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Lifecycle of a {@link ScanJob}. The allowed transitions are
+ * QUEUED -> RUNNING -> COMPLETED | FAILED, and QUEUED -> FAILED;
+ * COMPLETED and FAILED are terminal.
+ */
+public enum ScanStatus {
+    QUEUED, RUNNING, COMPLETED, FAILED;
+
+    public Set<ScanStatus> next() {
+        return switch (this) {
+            case QUEUED -> EnumSet.of(RUNNING, FAILED);
+            case RUNNING -> EnumSet.of(COMPLETED, FAILED);
+            case COMPLETED, FAILED -> EnumSet.noneOf(ScanStatus.class);
+        };
+    }
+
+    public boolean canTransitionTo(ScanStatus target) {
+        return next().contains(target);
+    }
+
+    /** Names of the states a job may be in to move to {@code target}. */
+    public static List<String> sourcesOf(ScanStatus target) {
+        List<String> sources = new ArrayList<>();
+        for (ScanStatus s : values()) {
+            if (s.canTransitionTo(target)) {
+                sources.add(s.name());
+            }
+        }
+        return sources;
+    }
+}
@@ -1,7 +1,107 @@
 package com.cbom.scan.repo;
 
+import com.cbom.scan.model.ScanIds;
 import com.cbom.scan.model.ScanJob;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.Optional;
 import java.util.UUID;
 
-public interface ScanJobRepository extends JpaRepository<ScanJob, UUID> { }
+/**
+ * scan_job is partitioned on created_at, so every statement here bounds
+ * created_at to the window the id carries (see {@link ScanIds}) and touches a
+ * single partition. Use {@link #findJob} rather than {@code findById}, which
+ * can only filter on the id and reads every partition.
+ */
+public interface ScanJobRepository extends JpaRepository<ScanJob, UUID> {
+
+    @Query("SELECT j FROM ScanJob j WHERE j.id = :id AND j.createdAt >= :since AND j.createdAt < :until")
+    Optional<ScanJob> findJob(@Param("id") UUID id, @Param("since") Instant since, @Param("until") Instant until);
+
+    default Optional<ScanJob> findJob(UUID id) {
+        ScanIds.Window w = ScanIds.window(id);
+        return findJob(id, w.from(), w.to());
+    }
+
+    /**
+     * Move a job to {@code status} if it is currently in one of {@code from}.
+     * Only status and updated_at are written. Returns the number of rows
+     * updated, i.e. 0 when the transition is not allowed.
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE ScanJob j SET j.status = :status, j.updatedAt = :now WHERE j.id = :id "
+            + "AND j.createdAt >= :since AND j.createdAt < :until AND j.status IN :from")
+    int updateStatus(@Param("id") UUID id, @Param("since") Instant since, @Param("until") Instant until,
+            @Param("status") String status, @Param("from") Collection<String> from, @Param("now") Instant now);
+
+    default int updateStatus(UUID id, String status, Collection<String> from, Instant now) {
+        ScanIds.Window w = ScanIds.window(id);
+        return updateStatus(id, w.from(), w.to(), status, from, now);
+    }
+
+    /**
+     * Same as {@link #updateStatus} but also records an error message, the
+     * scan metrics and the ETag of the merged document, which a finished job
+     * is served with whether or not it has results.
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE ScanJob j SET j.status = :status, j.errorMessage = :error, j.scanMetrics = :metrics, "
+            + "j.mergedEtag = :mergedEtag, j.updatedAt = :now WHERE j.id = :id AND j.createdAt >= :since "
+            + "AND j.createdAt < :until AND j.status IN :from")
+    int updateStatus(@Param("id") UUID id, @Param("since") Instant since, @Param("until") Instant until,
+            @Param("status") String status, @Param("from") Collection<String> from, @Param("error") String error,
+            @Param("metrics") String scanMetrics, @Param("mergedEtag") String mergedEtag, @Param("now") Instant now);
+
+    default int updateStatus(UUID id, String status, Collection<String> from, String error, String scanMetrics,
+            String mergedEtag, Instant now) {
+        ScanIds.Window w = ScanIds.window(id);
+        return updateStatus(id, w.from(), w.to(), status, from, error, scanMetrics, mergedEtag, now);
+    }
+
+    /** Write the scan results, their ETags and the final status in one statement. */
+    @Modifying
+    @Transactional
+    @Query("UPDATE ScanJob j SET j.status = :status, j.semgrepOutput = :semgrep, j.cbomkitOutput = :cbom, "
+            + "j.pqcScore = :score, j.detectedLanguage = :language, j.errorMessage = :error, "
+            + "j.scanMetrics = :metrics, j.cbomEtag = :cbomEtag, j.mergedEtag = :mergedEtag, j.updatedAt = :now "
+            + "WHERE j.id = :id AND j.createdAt >= :since AND j.createdAt < :until AND j.status IN :from")
+    int saveResults(@Param("id") UUID id, @Param("since") Instant since, @Param("until") Instant until,
+            @Param("status") String status, @Param("from") Collection<String> from,
+            @Param("semgrep") String semgrepOutput, @Param("cbom") String cbomOutput,
+            @Param("score") Integer pqcScore, @Param("language") String detectedLanguage,
+            @Param("error") String errorMessage, @Param("metrics") String scanMetrics,
+            @Param("cbomEtag") String cbomEtag, @Param("mergedEtag") String mergedEtag, @Param("now") Instant now);
+
+    default int saveResults(UUID id, String status, Collection<String> from, String semgrepOutput, String cbomOutput,
+            Integer pqcScore, String detectedLanguage, String errorMessage, String scanMetrics, String cbomEtag,
+            String mergedEtag, Instant now) {
+        ScanIds.Window w = ScanIds.window(id);
+        return saveResults(id, w.from(), w.to(), status, from, semgrepOutput, cbomOutput, pqcScore, detectedLanguage,
+                errorMessage, scanMetrics, cbomEtag, mergedEtag, now);
+    }
+
+    /**
+     * Store the binary encodings of the CBOM saved by {@link #saveResults},
+     * in the same transaction. They are not mapped on {@link ScanJob}, so
+     * loading a job does not read them.
+     */
+    @Modifying
+    @Transactional
+    @Query(value = "UPDATE scan_job SET cbom_smile = :smile, cbom_cbor = :cbor, cbom_protobuf = :protobuf "
+            + "WHERE id = :id AND created_at >= :since AND created_at < :until", nativeQuery = true)
+    int saveEncodings(@Param("id") UUID id, @Param("since") Instant since, @Param("until") Instant until,
+            @Param("smile") byte[] smile, @Param("cbor") byte[] cbor, @Param("protobuf") byte[] protobuf);
+
+    default int saveEncodings(UUID id, byte[] smile, byte[] cbor, byte[] protobuf) {
+        ScanIds.Window w = ScanIds.window(id);
+        return saveEncodings(id, w.from(), w.to(), smile, cbor, protobuf);
+    }
+}
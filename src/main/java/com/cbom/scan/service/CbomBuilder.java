@@ -1,6 +1,9 @@
 package com.cbom.scan.service;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.time.Instant;
 import java.util.HashMap;
 import java.util.List;
@@ -12,13 +15,15 @@ import java.util.regex.Pattern;
 import org.yaml.snakeyaml.Yaml;
 
 import com.cbom.scan.model.ScanJob;
+import com.cbom.scan.service.ReportService.Encoding;
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 
 /**
- * Build a CycloneDX 1.6 CBOM (JSON) from Semgrep results.
+ * Build a CycloneDX 1.6 CBOM from Semgrep results.
  * - bomFormat: CycloneDX
  * - specVersion: 1.6
  * - components[].type = "cryptographic-asset"
@@ -28,11 +33,66 @@ import com.fasterxml.jackson.databind.node.ObjectNode;
  * parameterSetIdentifier}
  * - evidence.occurrences with file + line + snippet
  * - metadata.tools includes "Semgrep"
+ *
+ * The document is built once and written in every served encoding (see
+ * {@link #build}): JSON, Smile and CBOR through a Jackson generator of each
+ * format, and protobuf as a CycloneDX Bom message ({@link CbomProtobuf}).
+ *
+ * In aggregated mode findings with the same asset identity (ruleId,
+ * assetType, primitive, mode, parameterSetIdentifier) become one component whose
+ * evidence.occurrences lists every file + line, without snippets. The first
+ * snippet is kept once, as the exampleSnippet property; the description names
+ * the asset and rule rather than quoting any one occurrence.
  */
 public class CbomBuilder {
   private static final ObjectMapper M = new ObjectMapper();
 
+  private final boolean aggregate;
+
+  public CbomBuilder() {
+    this(false);
+  }
+
+  public CbomBuilder(boolean aggregate) {
+    this.aggregate = aggregate;
+  }
+
+  /** One CBOM in every served encoding, all written from the same document. */
+  public record Encoded(String json, byte[] smile, byte[] cbor, byte[] protobuf) {
+  }
+
   public String fromSemgrep(ScanJob job, JsonNode semgrepJson, String semgrepConfig) {
+    return document(job, semgrepJson, semgrepConfig, null).toString();
+  }
+
+  /**
+   * Build the CBOM and write it in every encoding, feeding every classified
+   * finding to {@code scorer} (if not null) in the same pass.
+   */
+  public Encoded build(ScanJob job, JsonNode semgrepJson, String semgrepConfig, PqcScorer scorer) {
+    return encode(document(job, semgrepJson, semgrepConfig, scorer));
+  }
+
+  /** Write a CBOM document in every encoding. */
+  public static Encoded encode(JsonNode bom) {
+    return new Encoded(bom.toString(), write(bom, Encoding.SMILE), write(bom, Encoding.CBOR),
+        write(bom, Encoding.PROTOBUF));
+  }
+
+  /** Write a CBOM document in one binary encoding. */
+  static byte[] write(JsonNode bom, Encoding encoding) {
+    if (encoding == Encoding.PROTOBUF)
+      return CbomProtobuf.write(bom);
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try (JsonGenerator gen = encoding.factory().createGenerator(out)) {
+      M.writeTree(gen, bom);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return out.toByteArray();
+  }
+
+  private ObjectNode document(ScanJob job, JsonNode semgrepJson, String semgrepConfig, PqcScorer scorer) {
     ObjectNode bom = M.createObjectNode();
     bom.put("bomFormat", "CycloneDX");
     bom.put("specVersion", "1.6");
@@ -53,6 +113,7 @@ public class CbomBuilder {
     addProp(properties, "repoUrl", job != null ? nvl(job.getRepoUrl(), "") : "");
     addProp(properties, "ref", job != null ? nvl(job.getRef(), "") : "");
     addProp(properties, "semgrepConfig", nvl(semgrepConfig, ""));
+    addProp(properties, "cbomMode", aggregate ? "aggregated" : "per-finding");
 
     // --- Load Semgrep config YAML for rule metadata enrichment ---
     Map<String, Map<String, Object>> ruleMeta = new HashMap<>();
@@ -78,10 +139,12 @@ public class CbomBuilder {
 
     // --- components (cryptographic-asset)
     ArrayNode components = bom.putArray("components");
+    // aggregated mode: one component per asset identity, keyed by assetKey()
+    Map<String, ObjectNode> groups = new HashMap<>();
     if (semgrepJson != null && semgrepJson.has("results")) {
       for (JsonNode r : semgrepJson.get("results")) {
         String ruleId = txt(r, "check_id");
-        String path = txt(r.path("path"), "path");
+        String path = txt(r, "path");
         int line = r.path("start").path("line").asInt(-1);
         String lang = txt(r.path("extra"), "language");
         String code = txt(r.path("extra"), "lines");
@@ -91,70 +154,120 @@ public class CbomBuilder {
         String primitive = classifyPrimitive(ruleId, code); // e.g., hash | block-cipher | pke | drbg
         String mode = classifyMode(ruleId, code); // gcm | cbc | ecb | ""
         String bits = classifyBits(ruleId, code); // "128"|"256"|"" (parameterSetIdentifier)
-        String name = buildDisplayName(primitive, mode, bits); // "AES-128-GCM" etc.
-
-        ObjectNode comp = components.addObject();
-        comp.put("type", "cryptographic-asset");
-        comp.put("bom-ref", ruleId + "@" + path + ":" + Math.max(line, 0));
-        comp.put("name", name);
-        comp.put("scope", "required");
-        if (code != null && !code.isBlank())
-          comp.put("description", code.trim());
-
-        // optional grouping by file
-        comp.put("group", baseName(path));
-
-        // evidence
-        ObjectNode evidence = comp.putObject("evidence");
-        ArrayNode occ = evidence.putArray("occurrences");
-        ObjectNode o = occ.addObject();
-        o.put("location", nvl(path, ""));
-        if (line > 0)
-          o.put("line", line);
-        if (code != null && !code.isBlank())
-          o.put("additionalContext", code);
-
-        // cryptoProperties (CBOM)
-        ObjectNode cryptoProps = comp.putObject("cryptoProperties");
-        cryptoProps.put("assetType", assetType); // "algorithm" most commonly for Semgrep hits
-
-        ObjectNode algProps = cryptoProps.putObject("algorithmProperties");
-        if (!primitive.isBlank())
-          algProps.put("primitive", primitive);
-        if (!mode.isBlank())
-          algProps.put("mode", mode);
-        if (!bits.isBlank())
-          algProps.put("parameterSetIdentifier", bits);
-
-        // extra properties (not required, but useful)
-        ArrayNode cprops = comp.putArray("properties");
-        addProp(cprops, "language", nvl(lang, ""));
-        addProp(cprops, "detectionMethod", "static-analysis");
-        addProp(cprops, "ruleId", ruleId);
-
-        // --- Enrich with rule metadata from YAML config ---
-        if (ruleMeta.containsKey(ruleId)) {
-          Map<String, Object> meta = ruleMeta.get(ruleId);
-          if (meta.containsKey("severity")) {
-            addProp(cprops, "severity", meta.get("severity").toString());
-          }
-          if (meta.containsKey("message")) {
-            addProp(cprops, "message", meta.get("message").toString());
-          }
-          if (meta.containsKey("patterns")) {
-            addProp(cprops, "patterns", meta.get("patterns").toString());
-          }
-          if (meta.containsKey("languages")) {
-            addProp(cprops, "languages", meta.get("languages").toString());
-          }
-          if (meta.containsKey("id")) {
-            addProp(cprops, "ruleConfigId", meta.get("id").toString());
+        if (scorer != null)
+          scorer.add(ruleId, assetType, primitive, mode, bits, code, ruleMeta.get(ruleId));
+
+        if (aggregate) {
+          // every field of the key comes from the key; language follows the rule (one rule file per language)
+          String key = assetKey(ruleId, assetType, primitive, mode, bits);
+          ObjectNode comp = groups.get(key);
+          if (comp == null) {
+            comp = addComponent(components, key, ruleId, path, lang, code, assetType, primitive, mode, bits,
+                ruleMeta);
+            comp.remove("group"); // occurrences span many files
+            // the asset stands for every occurrence; one snippet is kept as an example
+            comp.put("description", comp.path("name").asText() + " (" + ruleId + ")");
+            groups.put(key, comp);
           }
+          ArrayNode props = (ArrayNode) comp.get("properties");
+          if (code != null && !code.isBlank() && !hasProp(props, "exampleSnippet"))
+            addProp(props, "exampleSnippet", code);
+          // compact occurrence: location + line only
+          ObjectNode o = ((ArrayNode) comp.path("evidence").path("occurrences")).addObject();
+          o.put("location", nvl(path, ""));
+          if (line > 0)
+            o.put("line", line);
+        } else {
+          ObjectNode comp = addComponent(components, ruleId + "@" + path + ":" + Math.max(line, 0), ruleId, path,
+              lang, code, assetType, primitive, mode, bits, ruleMeta);
+          ObjectNode o = ((ArrayNode) comp.path("evidence").path("occurrences")).addObject();
+          o.put("location", nvl(path, ""));
+          if (line > 0)
+            o.put("line", line);
+          if (code != null && !code.isBlank())
+            o.put("additionalContext", code);
         }
       }
     }
+    for (ObjectNode comp : groups.values()) {
+      addProp((ArrayNode) comp.get("properties"), "occurrenceCount",
+          String.valueOf(comp.path("evidence").path("occurrences").size()));
+    }
+
+    return bom;
+  }
+
+  private static ObjectNode addComponent(ArrayNode components, String bomRef, String ruleId, String path,
+      String lang, String code, String assetType, String primitive, String mode, String bits,
+      Map<String, Map<String, Object>> ruleMeta) {
+    ObjectNode comp = components.addObject();
+    comp.put("type", "cryptographic-asset");
+    comp.put("bom-ref", bomRef);
+    comp.put("name", buildDisplayName(primitive, mode, bits)); // "AES-128-GCM" etc.
+    comp.put("scope", "required");
+    if (code != null && !code.isBlank())
+      comp.put("description", code.trim());
+
+    // optional grouping by file
+    comp.put("group", baseName(path));
+
+    // evidence; occurrences are filled in by the caller
+    comp.putObject("evidence").putArray("occurrences");
+
+    // cryptoProperties (CBOM)
+    ObjectNode cryptoProps = comp.putObject("cryptoProperties");
+    cryptoProps.put("assetType", assetType); // "algorithm" most commonly for Semgrep hits
+
+    ObjectNode algProps = cryptoProps.putObject("algorithmProperties");
+    if (!primitive.isBlank())
+      algProps.put("primitive", primitive);
+    if (!mode.isBlank())
+      algProps.put("mode", mode);
+    if (!bits.isBlank())
+      algProps.put("parameterSetIdentifier", bits);
+
+    // extra properties (not required, but useful)
+    ArrayNode cprops = comp.putArray("properties");
+    addProp(cprops, "language", nvl(lang, ""));
+    addProp(cprops, "detectionMethod", "static-analysis");
+    addProp(cprops, "ruleId", ruleId);
+
+    // --- Enrich with rule metadata from YAML config ---
+    if (ruleMeta.containsKey(ruleId)) {
+      Map<String, Object> meta = ruleMeta.get(ruleId);
+      if (meta.containsKey("severity")) {
+        addProp(cprops, "severity", meta.get("severity").toString());
+      }
+      if (meta.containsKey("message")) {
+        addProp(cprops, "message", meta.get("message").toString());
+      }
+      if (meta.containsKey("patterns")) {
+        addProp(cprops, "patterns", meta.get("patterns").toString());
+      }
+      if (meta.containsKey("languages")) {
+        addProp(cprops, "languages", meta.get("languages").toString());
+      }
+      if (meta.containsKey("id")) {
+        addProp(cprops, "ruleConfigId", meta.get("id").toString());
+      }
+    }
+    return comp;
+  }
 
-    return bom.toString();
+  /**
+   * Normalized identity of a crypto asset: findings with the same key describe
+   * the same asset and are merged in aggregated mode. A component's assetType,
+   * name and algorithmProperties all derive from its key, so they do not
+   * depend on which finding came first.
+   */
+  static String assetKey(String ruleId, String assetType, String primitive, String mode, String bits) {
+    StringBuilder sb = new StringBuilder(nvl(ruleId, "")).append('@').append(nvl(assetType, "")).append('/')
+        .append(nvl(primitive, ""));
+    if (mode != null && !mode.isBlank())
+      sb.append('-').append(mode);
+    if (bits != null && !bits.isBlank())
+      sb.append('-').append(bits);
+    return sb.toString();
   }
 
   // ---------- helpers ----------
@@ -167,6 +280,14 @@ public class CbomBuilder {
     p.put("value", v);
   }
 
+  private static boolean hasProp(ArrayNode props, String k) {
+    for (JsonNode p : props) {
+      if (k.equals(p.path("name").asText()))
+        return true;
+    }
+    return false;
+  }
+
   private static String txt(JsonNode node, String key) {
     return node.has(key) ? node.get(key).asText("") : "";
   }
@@ -0,0 +1,272 @@
+package com.cbom.scan.service;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import com.cbom.scan.model.ScanIds;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Computes the crypto asset delta between the CBOMs of two scans.
+ *
+ * Components are keyed by asset identity ({@link CbomBuilder#assetKey}), so
+ * per-finding and aggregated CBOMs compare the same way. The base CBOM is
+ * streamed into a hash table of asset key -> occurrences; the head CBOM is
+ * then streamed against it, one component at a time, without building either
+ * document as a tree.
+ *
+ * Only attributes derived from the key (name, ruleId, assetType,
+ * algorithmProperties) are reported per asset; components with the same key
+ * always agree on them. Severity comes from the rule configuration, which can
+ * change between scans, so the set of severities on each side is compared.
+ * Snippet-dependent fields such as the description are not compared.
+ */
+@Service
+public class CbomDiffService {
+    private static final ObjectMapper M = new ObjectMapper();
+    // workspace prefix of absolute semgrep paths, e.g. /tmp/cbom-workspaces/scan-<uuid>/
+    private static final Pattern WORKSPACE_PREFIX = Pattern
+            .compile("^.*/scan-[0-9a-fA-F]{8}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{12}/");
+
+    private final JdbcTemplate jdbc;
+
+    public CbomDiffService(JdbcTemplate jdbc) {
+        this.jdbc = jdbc;
+    }
+
+    private static final class Asset {
+        final String key;
+        final ObjectNode attributes;
+        final Set<String> severities = new TreeSet<>();
+        // head side of an asset found in both scans
+        final Set<String> headSeverities = new TreeSet<>();
+        // occurrence -> count; one line can hold several hits of the same asset
+        final Map<String, Integer> occurrences = new LinkedHashMap<>();
+        // head side only
+        final List<String> addedOccurrences = new ArrayList<>();
+        boolean seen;
+
+        Asset(String key, ObjectNode attributes) {
+            this.key = key;
+            this.attributes = attributes;
+        }
+    }
+
+    /**
+     * Diff scan {@code base} against scan {@code head}. Empty if either scan
+     * does not exist or has no CBOM. At most {@code limit} occurrences are
+     * listed per asset; the counts are always complete.
+     */
+    public Optional<ObjectNode> diff(UUID base, UUID head, int limit) {
+        Map<String, Asset> baseAssets = new HashMap<>();
+        boolean hasBase = stream(base, comp -> {
+            String key = key(comp);
+            Asset a = baseAssets.computeIfAbsent(key, k -> new Asset(k, attributes(comp)));
+            severity(comp, a.severities);
+            occurrences(comp, o -> a.occurrences.merge(o, 1, Integer::sum));
+        });
+        if (!hasBase) {
+            return Optional.empty();
+        }
+
+        Map<String, Asset> added = new LinkedHashMap<>();
+        boolean hasHead = stream(head, comp -> {
+            String key = key(comp);
+            Asset a = baseAssets.get(key);
+            if (a == null) {
+                Asset n = added.computeIfAbsent(key, k -> new Asset(k, attributes(comp)));
+                severity(comp, n.severities);
+                occurrences(comp, o -> n.occurrences.merge(o, 1, Integer::sum));
+                return;
+            }
+            a.seen = true;
+            severity(comp, a.headSeverities);
+            // occurrences still counted afterwards exist only in the base
+            occurrences(comp, o -> {
+                Integer n = a.occurrences.get(o);
+                if (n == null) {
+                    a.addedOccurrences.add(o);
+                } else if (n == 1) {
+                    a.occurrences.remove(o);
+                } else {
+                    a.occurrences.put(o, n - 1);
+                }
+            });
+        });
+        if (!hasHead) {
+            return Optional.empty();
+        }
+
+        ObjectNode out = M.createObjectNode();
+        out.put("base", base.toString());
+        out.put("head", head.toString());
+        ObjectNode summary = out.putObject("summary");
+        ArrayNode addedOut = out.putArray("added");
+        ArrayNode removedOut = out.putArray("removed");
+        ArrayNode changedOut = out.putArray("changed");
+        int unchanged = 0;
+
+        for (Asset a : added.values()) {
+            ObjectNode n = asset(addedOut, a);
+            list(n, "occurrences", expand(a.occurrences), limit);
+        }
+        List<Asset> sorted = new ArrayList<>(baseAssets.values());
+        sorted.sort((x, y) -> x.key.compareTo(y.key));
+        for (Asset a : sorted) {
+            if (!a.seen) {
+                ObjectNode n = asset(removedOut, a);
+                list(n, "occurrences", expand(a.occurrences), limit);
+            } else if (!a.severities.equals(a.headSeverities) || !a.occurrences.isEmpty()
+                    || !a.addedOccurrences.isEmpty()) {
+                ObjectNode n = asset(changedOut, a);
+                if (!a.severities.equals(a.headSeverities)) {
+                    n.put("headSeverity", String.join(",", a.headSeverities));
+                }
+                list(n, "addedOccurrences", a.addedOccurrences, limit);
+                list(n, "removedOccurrences", expand(a.occurrences), limit);
+            } else {
+                unchanged++;
+            }
+        }
+        summary.put("added", addedOut.size());
+        summary.put("removed", removedOut.size());
+        summary.put("changed", changedOut.size());
+        summary.put("unchanged", unchanged);
+        return Optional.of(out);
+    }
+
+    /**
+     * Feed each component of the scan's CBOM to {@code sink}. Returns false if
+     * the scan or its CBOM does not exist.
+     */
+    private boolean stream(UUID scanId, Consumer<JsonNode> sink) {
+        Boolean found = jdbc.query("SELECT cbomkit_output::text FROM scan_job WHERE " + ScanIds.BY_ID, rs -> {
+            if (!rs.next()) {
+                return false;
+            }
+            try (Reader reader = rs.getCharacterStream(1)) {
+                if (reader == null) {
+                    return false;
+                }
+                try (JsonParser p = M.getFactory().createParser(reader)) {
+                    if (p.nextToken() != JsonToken.START_OBJECT) {
+                        return true;
+                    }
+                    while (p.nextToken() == JsonToken.FIELD_NAME) {
+                        String field = p.currentName();
+                        JsonToken value = p.nextToken();
+                        if ("components".equals(field) && value == JsonToken.START_ARRAY) {
+                            while (p.nextToken() == JsonToken.START_OBJECT) {
+                                sink.accept(M.readTree(p));
+                            }
+                        } else {
+                            p.skipChildren();
+                        }
+                    }
+                }
+                return true;
+            } catch (IOException e) {
+                throw new IllegalStateException("Unreadable CBOM for scan " + scanId, e);
+            }
+        }, ScanIds.args(scanId));
+        return Boolean.TRUE.equals(found);
+    }
+
+    private static String key(JsonNode comp) {
+        JsonNode crypto = comp.path("cryptoProperties");
+        JsonNode alg = crypto.path("algorithmProperties");
+        return CbomBuilder.assetKey(property(comp, "ruleId"), crypto.path("assetType").asText(""),
+                alg.path("primitive").asText(""), alg.path("mode").asText(""),
+                alg.path("parameterSetIdentifier").asText(""));
+    }
+
+    /** Reported fields of a component; all derive from its key, so any component with that key gives the same. */
+    private static ObjectNode attributes(JsonNode comp) {
+        ObjectNode a = M.createObjectNode();
+        a.put("name", comp.path("name").asText(""));
+        a.put("ruleId", property(comp, "ruleId"));
+        a.put("assetType", comp.path("cryptoProperties").path("assetType").asText(""));
+        JsonNode alg = comp.path("cryptoProperties").path("algorithmProperties");
+        ObjectNode algOut = a.putObject("algorithmProperties");
+        for (String field : new String[] { "primitive", "mode", "parameterSetIdentifier" }) {
+            if (alg.hasNonNull(field)) {
+                algOut.put(field, alg.get(field).asText());
+            }
+        }
+        return a;
+    }
+
+    private static void severity(JsonNode comp, Set<String> into) {
+        String severity = property(comp, "severity");
+        if (!severity.isEmpty()) {
+            into.add(severity);
+        }
+    }
+
+    private static void occurrences(JsonNode comp, Consumer<String> sink) {
+        for (JsonNode o : comp.path("evidence").path("occurrences")) {
+            String location = WORKSPACE_PREFIX.matcher(o.path("location").asText("")).replaceFirst("");
+            sink.accept(o.has("line") ? location + ":" + o.path("line").asInt() : location);
+        }
+    }
+
+    private static String property(JsonNode comp, String name) {
+        for (JsonNode p : comp.path("properties")) {
+            if (name.equals(p.path("name").asText())) {
+                return p.path("value").asText("");
+            }
+        }
+        return "";
+    }
+
+    /** Each occurrence repeated as many times as it was counted. */
+    private static List<String> expand(Map<String, Integer> counted) {
+        List<String> out = new ArrayList<>();
+        counted.forEach((o, n) -> {
+            for (int i = 0; i < n; i++) {
+                out.add(o);
+            }
+        });
+        return out;
+    }
+
+    private static ObjectNode asset(ArrayNode target, Asset a) {
+        ObjectNode n = target.addObject();
+        n.put("key", a.key);
+        n.setAll(a.attributes);
+        if (!a.severities.isEmpty()) {
+            n.put("severity", String.join(",", a.severities));
+        }
+        return n;
+    }
+
+    private static void list(ObjectNode n, String field, Iterable<String> values, int limit) {
+        ArrayNode arr = n.putArray(field);
+        int total = 0;
+        for (String v : values) {
+            if (total++ < limit) {
+                arr.add(v);
+            }
+        }
+        n.put(field + "Count", total);
+    }
+}
@@ -0,0 +1,142 @@
+package com.cbom.scan.service;
+
+import java.time.Instant;
+import java.util.Locale;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.google.protobuf.Timestamp;
+
+import cyclonedx.v1_6.Bom16.Bom;
+import cyclonedx.v1_6.Bom16.Classification;
+import cyclonedx.v1_6.Bom16.Component;
+import cyclonedx.v1_6.Bom16.CryptoProperties;
+import cyclonedx.v1_6.Bom16.CryptoProperties.AlgorithmProperties;
+import cyclonedx.v1_6.Bom16.Evidence;
+import cyclonedx.v1_6.Bom16.EvidenceOccurrences;
+import cyclonedx.v1_6.Bom16.Metadata;
+import cyclonedx.v1_6.Bom16.OrganizationalEntity;
+import cyclonedx.v1_6.Bom16.Property;
+import cyclonedx.v1_6.Bom16.Scope;
+import cyclonedx.v1_6.Bom16.Tool;
+
+/**
+ * Writes the document {@link CbomBuilder} builds as a CycloneDX 1.6 protobuf
+ * Bom (src/main/proto/bom-1.6.proto, the schema CycloneDX publishes).
+ *
+ * Only the fields CbomBuilder emits are mapped. CBOM strings become the
+ * schema's enums ("block-cipher" -> CRYPTO_PRIMITIVE_BLOCK_CIPHER), OTHER or
+ * UNSPECIFIED when there is no such constant. The JSON supplier is a bare
+ * repository URL and becomes an organizational entity with that name and
+ * URL; tools become tool components.
+ */
+final class CbomProtobuf {
+  private CbomProtobuf() {
+  }
+
+  static byte[] write(JsonNode bom) {
+    Bom.Builder out = Bom.newBuilder()
+        .setSpecVersion(bom.path("specVersion").asText("1.6"))
+        .setVersion(bom.path("version").asInt(1));
+    if (bom.hasNonNull("serialNumber"))
+      out.setSerialNumber(bom.get("serialNumber").asText());
+    if (bom.path("metadata").isObject())
+      out.setMetadata(metadata(bom.get("metadata")));
+    for (JsonNode c : bom.path("components"))
+      out.addComponents(component(c));
+    return out.build().toByteArray();
+  }
+
+  private static Metadata metadata(JsonNode m) {
+    Metadata.Builder out = Metadata.newBuilder();
+    if (m.hasNonNull("timestamp")) {
+      Instant at = Instant.parse(m.get("timestamp").asText());
+      out.setTimestamp(Timestamp.newBuilder().setSeconds(at.getEpochSecond()).setNanos(at.getNano()));
+    }
+    JsonNode supplier = m.path("supplier");
+    if (supplier.isTextual())
+      out.setSupplier(OrganizationalEntity.newBuilder().setName(supplier.asText()).addUrl(supplier.asText()));
+    if (m.path("tools").size() > 0) {
+      Tool.Builder tools = Tool.newBuilder();
+      for (JsonNode t : m.path("tools")) {
+        Component.Builder tool = Component.newBuilder().setType(Classification.CLASSIFICATION_APPLICATION)
+            .setName(t.path("name").asText(""));
+        if (t.hasNonNull("vendor"))
+          tool.setPublisher(t.get("vendor").asText());
+        tools.addComponents(tool);
+      }
+      out.setTools(tools);
+    }
+    for (JsonNode p : m.path("properties"))
+      out.addProperties(property(p));
+    return out.build();
+  }
+
+  private static Component component(JsonNode c) {
+    Component.Builder out = Component.newBuilder()
+        .setType(constant(Classification.class, "CLASSIFICATION_", c.path("type").asText(""),
+            Classification.CLASSIFICATION_NULL))
+        .setName(c.path("name").asText(""));
+    if (c.hasNonNull("bom-ref"))
+      out.setBomRef(c.get("bom-ref").asText());
+    if (c.hasNonNull("group"))
+      out.setGroup(c.get("group").asText());
+    if (c.hasNonNull("description"))
+      out.setDescription(c.get("description").asText());
+    if (c.hasNonNull("scope"))
+      out.setScope(constant(Scope.class, "SCOPE_", c.get("scope").asText(), Scope.SCOPE_UNSPECIFIED));
+
+    JsonNode occurrences = c.path("evidence").path("occurrences");
+    if (occurrences.size() > 0) {
+      Evidence.Builder evidence = Evidence.newBuilder();
+      for (JsonNode o : occurrences) {
+        EvidenceOccurrences.Builder occurrence = EvidenceOccurrences.newBuilder()
+            .setLocation(o.path("location").asText(""));
+        if (o.has("line"))
+          occurrence.setLine(o.get("line").asInt());
+        if (o.hasNonNull("additionalContext"))
+          occurrence.setAdditionalContext(o.get("additionalContext").asText());
+        evidence.addOccurrences(occurrence);
+      }
+      out.addEvidence(evidence);
+    }
+
+    JsonNode crypto = c.path("cryptoProperties");
+    if (crypto.isObject()) {
+      CryptoProperties.Builder cp = CryptoProperties.newBuilder()
+          .setAssetType(constant(CryptoProperties.CryptoAssetType.class, "CRYPTO_ASSET_TYPE_",
+              crypto.path("assetType").asText(""), CryptoProperties.CryptoAssetType.CRYPTO_ASSET_TYPE_UNSPECIFIED));
+      JsonNode alg = crypto.path("algorithmProperties");
+      if (alg.isObject()) {
+        AlgorithmProperties.Builder ap = AlgorithmProperties.newBuilder();
+        if (alg.hasNonNull("primitive"))
+          ap.setPrimitive(constant(AlgorithmProperties.CryptoPrimitive.class, "CRYPTO_PRIMITIVE_",
+              alg.get("primitive").asText(), AlgorithmProperties.CryptoPrimitive.CRYPTO_PRIMITIVE_OTHER));
+        if (alg.hasNonNull("mode"))
+          ap.setMode(constant(AlgorithmProperties.CryptoAlgorithmMode.class, "CRYPTO_ALGORITHM_MODE_",
+              alg.get("mode").asText(), AlgorithmProperties.CryptoAlgorithmMode.CRYPTO_ALGORITHM_MODE_OTHER));
+        if (alg.hasNonNull("parameterSetIdentifier"))
+          ap.setParameterSetIdentifier(alg.get("parameterSetIdentifier").asText());
+        cp.setAlgorithmProperties(ap);
+      }
+      out.setCryptoProperties(cp);
+    }
+
+    for (JsonNode p : c.path("properties"))
+      out.addProperties(property(p));
+    return out.build();
+  }
+
+  private static Property property(JsonNode p) {
+    return Property.newBuilder().setName(p.path("name").asText("")).setValue(p.path("value").asText("")).build();
+  }
+
+  /** The enum constant for a CBOM string: "relatedCryptoMaterial" -> prefix + RELATED_CRYPTO_MATERIAL. */
+  private static <E extends Enum<E>> E constant(Class<E> type, String prefix, String value, E fallback) {
+    String name = prefix + value.replaceAll("([a-z0-9])([A-Z])", "$1_$2").replace('-', '_').toUpperCase(Locale.ROOT);
+    try {
+      return Enum.valueOf(type, name);
+    } catch (IllegalArgumentException e) {
+      return fallback;
+    }
+  }
+}
@@ -0,0 +1,350 @@
+package com.cbom.scan.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Removes files that are not worth scanning from a checkout before Semgrep
+ * runs: generated code (.gitattributes {@code linguist-generated}, generator
+ * file names such as {@code *.pb.go}, generator markers in the comments a
+ * file starts with), vendored code ({@code linguist-vendored}), minified or encoded
+ * files (long average lines in the first 8 KB, or near-random bytes) and
+ * files over the size cap for their extension. Checkouts are disposable, so
+ * dropping the files is the exclude list: it holds for batched, sharded and
+ * single scans alike and never grows a command line.
+ */
+@Component
+public class FileClassifier {
+    private static final Logger log = LoggerFactory.getLogger(FileClassifier.class);
+    private static final int SAMPLE_BYTES = 8192;
+
+    private static final Pattern MINIFIED_NAME = Pattern.compile(".*\\.(min\\.(js|css|mjs)|bundle\\.js)$");
+    private static final Pattern GENERATED_NAME = Pattern.compile(
+            ".*(\\.pb\\.(go|cc|h)|\\.pb\\.gw\\.go|_pb2(_grpc)?\\.pyi?|_pb\\.(js|d\\.ts)|_grpc\\.pb\\.go|\\.g\\.dart"
+                    + "|\\.designer\\.cs|_generated\\.\\w+|\\.generated\\.\\w+)$");
+    // whole text of one leading comment line: Go's "// Code generated ... DO NOT EDIT.", Facebook/Meta
+    // "@generated", protoc's banner and the .NET "<auto-generated>" tag
+    private static final Pattern GENERATED_MARKER = Pattern.compile(
+            "Code generated .* DO NOT EDIT\\.|@generated\\b.*"
+                    + "|Generated by the protocol buffer compiler\\.\\s+DO NOT EDIT!.*|<auto-generated\\b.*");
+
+    /** Why a file was skipped; also the keys of the reported statistics. */
+    public enum Reason {
+        GENERATED, VENDORED, MINIFIED, OVERSIZED;
+
+        String key() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    /** Files and bytes skipped per reason. */
+    public record Stats(Map<Reason, Integer> files, long bytes) {
+        public int total() {
+            return files.values().stream().mapToInt(Integer::intValue).sum();
+        }
+    }
+
+    private final boolean enabled;
+    private final Set<Reason> reasons = new HashSet<>();
+    private final long defaultMaxBytes;
+    private final Map<String, Long> maxBytesByExt = new HashMap<>();
+    private final int minifiedLineLength;
+    private final double entropyBits;
+
+    public FileClassifier(@Value("${scanner.skip.enabled:true}") boolean enabled,
+            @Value("${scanner.skip.reasons:generated,vendored,minified,oversized}") List<String> reasons,
+            @Value("${scanner.skip.max-kb:1024}") long maxKb,
+            @Value("${scanner.skip.max-kb-by-ext:js=256,mjs=256,cjs=256,jsx=256,ts=256,tsx=256,css=128,html=256}")
+            List<String> maxKbByExt,
+            @Value("${scanner.skip.minified-line-length:200}") int minifiedLineLength,
+            @Value("${scanner.skip.entropy-bits:5.8}") double entropyBits) {
+        this.enabled = enabled;
+        for (String r : reasons) {
+            if (!r.isBlank()) {
+                this.reasons.add(Reason.valueOf(r.trim().toUpperCase(Locale.ROOT)));
+            }
+        }
+        this.defaultMaxBytes = maxKb * 1024;
+        for (String cap : maxKbByExt) {
+            String[] kv = cap.split("=", 2);
+            if (kv.length == 2) {
+                maxBytesByExt.put(kv[0].trim().toLowerCase(Locale.ROOT), Long.parseLong(kv[1].trim()) * 1024);
+            }
+        }
+        this.minifiedLineLength = minifiedLineLength;
+        this.entropyBits = entropyBits;
+    }
+
+    /** One line of a .gitattributes file, relative to the directory holding it. */
+    private record Rule(Path base, PathMatcher matcher, boolean anchored, Boolean generated, Boolean vendored) {
+    }
+
+    /** Delete the files of {@code checkout} that should not be scanned and count them. */
+    public Stats prune(Path checkout) {
+        Map<Reason, Integer> files = new EnumMap<>(Reason.class);
+        long[] bytes = new long[1];
+        if (!enabled || reasons.isEmpty()) {
+            return new Stats(files, 0);
+        }
+        Deque<List<Rule>> attributes = new ArrayDeque<>();
+        try {
+            Files.walkFileTree(checkout, new SimpleFileVisitor<>() {
+                @Override
+                public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                    if (!dir.equals(checkout) && ".git".equals(dir.getFileName().toString())) {
+                        return FileVisitResult.SKIP_SUBTREE;
+                    }
+                    attributes.addLast(gitattributes(dir));
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                    if (!attrs.isRegularFile()) {
+                        return FileVisitResult.CONTINUE;
+                    }
+                    Reason reason = classify(file, attrs.size(), attributes);
+                    if (reason != null && reasons.contains(reason)) {
+                        try {
+                            Files.delete(file);
+                            files.merge(reason, 1, Integer::sum);
+                            bytes[0] += attrs.size();
+                        } catch (IOException e) {
+                            log.warn("[Classifier] Could not remove {}: {}", file, e.getMessage());
+                        }
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException exc) {
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult postVisitDirectory(Path dir, IOException exc) {
+                    attributes.removeLast();
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException e) {
+            log.warn("[Classifier] Failed to classify {}: {}", checkout, e.getMessage());
+        }
+        Stats stats = new Stats(files, bytes[0]);
+        if (stats.total() > 0) {
+            log.info("[Classifier] Skipping {} files ({} KB) under {}: {}", stats.total(), stats.bytes() / 1024,
+                    checkout, files);
+        }
+        return stats;
+    }
+
+    private Reason classify(Path file, long size, Deque<List<Rule>> attributes) {
+        String name = file.getFileName().toString();
+        if (".gitattributes".equals(name)) {
+            return null;
+        }
+        // .gitattributes: deeper files and later lines win
+        Boolean generated = null;
+        Boolean vendored = null;
+        for (List<Rule> rules : attributes) {
+            for (Rule r : rules) {
+                if (matches(r, file)) {
+                    generated = r.generated() != null ? r.generated() : generated;
+                    vendored = r.vendored() != null ? r.vendored() : vendored;
+                }
+            }
+        }
+        if (Boolean.TRUE.equals(vendored)) {
+            return Reason.VENDORED;
+        }
+        if (Boolean.TRUE.equals(generated)) {
+            return Reason.GENERATED;
+        }
+        if (Boolean.FALSE.equals(generated)) {
+            return oversized(name, size) ? Reason.OVERSIZED : null;
+        }
+        String lower = name.toLowerCase(Locale.ROOT);
+        if (MINIFIED_NAME.matcher(lower).matches()) {
+            return Reason.MINIFIED;
+        }
+        if (GENERATED_NAME.matcher(lower).matches()) {
+            return Reason.GENERATED;
+        }
+        if (oversized(lower, size)) {
+            return Reason.OVERSIZED;
+        }
+        return inspect(file);
+    }
+
+    private boolean oversized(String name, long size) {
+        int dot = name.lastIndexOf('.');
+        String ext = dot < 0 ? "" : name.substring(dot + 1).toLowerCase(Locale.ROOT);
+        return size > maxBytesByExt.getOrDefault(ext, defaultMaxBytes);
+    }
+
+    /** Look at the start of the file: generator headers, line length, byte entropy. */
+    private Reason inspect(Path file) {
+        byte[] sample;
+        try (InputStream in = Files.newInputStream(file)) {
+            sample = in.readNBytes(SAMPLE_BYTES);
+        } catch (IOException e) {
+            return null;
+        }
+        int lines = 1;
+        int[] counts = new int[256];
+        for (byte b : sample) {
+            if (b == 0) {
+                return null; // binary; Semgrep skips it anyway
+            }
+            if (b == '\n') {
+                lines++;
+            }
+            counts[b & 0xff]++;
+        }
+        for (String comment : leadingComments(new String(sample, StandardCharsets.UTF_8))) {
+            if (GENERATED_MARKER.matcher(comment).matches()) {
+                return Reason.GENERATED;
+            }
+        }
+        if (sample.length < 1024) {
+            return null; // too little to judge line shape
+        }
+        double meanLine = (double) sample.length / lines;
+        if (meanLine > minifiedLineLength) {
+            return Reason.MINIFIED;
+        }
+        // long lines of near-random bytes: inlined base64/hex data
+        if (meanLine > 100 && entropy(counts, sample.length) >= entropyBits) {
+            return Reason.MINIFIED;
+        }
+        return null;
+    }
+
+    /**
+     * Text of each comment line before the first line of code, without the
+     * comment delimiters. Blank lines are skipped; {@code //}, {@code #},
+     * {@code --}, block and XML comments are recognised.
+     */
+    static List<String> leadingComments(String head) {
+        List<String> comments = new ArrayList<>();
+        String blockEnd = null;
+        for (String line : head.replaceFirst("^\uFEFF", "").split("\\R")) {
+            String t = line.strip();
+            if (blockEnd == null && t.isEmpty()) {
+                continue;
+            }
+            if (blockEnd == null) {
+                if (t.startsWith("//") || t.startsWith("#") || t.startsWith("--")) {
+                    comments.add(t.replaceFirst("^(//+|#+!?|--+)\\s*", ""));
+                    continue;
+                }
+                if (t.startsWith("/*")) {
+                    blockEnd = "*/";
+                    t = t.substring(2);
+                } else if (t.startsWith("<!--")) {
+                    blockEnd = "-->";
+                    t = t.substring(4);
+                } else {
+                    break; // code
+                }
+            }
+            int end = t.indexOf(blockEnd);
+            if (end >= 0) {
+                t = t.substring(0, end);
+                blockEnd = null;
+            }
+            // doc-comment continuation lines start with '*'
+            comments.add(t.replaceFirst("^\\**\\s*", "").strip());
+        }
+        return comments;
+    }
+
+    private static double entropy(int[] counts, int total) {
+        double h = 0;
+        for (int c : counts) {
+            if (c > 0) {
+                double p = (double) c / total;
+                h -= p * Math.log(p) / Math.log(2);
+            }
+        }
+        return h;
+    }
+
+    private static boolean matches(Rule r, Path file) {
+        Path relative = r.base().relativize(file);
+        return r.anchored() ? r.matcher().matches(relative) : r.matcher().matches(file.getFileName());
+    }
+
+    private static List<Rule> gitattributes(Path dir) {
+        Path f = dir.resolve(".gitattributes");
+        if (!Files.isRegularFile(f)) {
+            return List.of();
+        }
+        List<Rule> rules = new ArrayList<>();
+        try {
+            for (String line : Files.readAllLines(f, StandardCharsets.UTF_8)) {
+                String[] parts = line.trim().split("\\s+");
+                if (parts.length < 2 || parts[0].startsWith("#")) {
+                    continue;
+                }
+                Boolean generated = null;
+                Boolean vendored = null;
+                for (int i = 1; i < parts.length; i++) {
+                    Boolean value = attribute(parts[i], "linguist-generated");
+                    generated = value != null ? value : generated;
+                    value = attribute(parts[i], "linguist-vendored");
+                    vendored = value != null ? value : vendored;
+                }
+                if (generated == null && vendored == null) {
+                    continue;
+                }
+                // a pattern with a slash is relative to this directory, otherwise it matches names at any depth
+                String pattern = parts[0];
+                boolean anchored = pattern.indexOf('/') >= 0;
+                if (pattern.startsWith("/")) {
+                    pattern = pattern.substring(1);
+                }
+                rules.add(new Rule(dir, FileSystems.getDefault().getPathMatcher("glob:" + pattern), anchored,
+                        generated, vendored));
+            }
+        } catch (Exception e) {
+            log.warn("[Classifier] Ignoring unreadable {}: {}", f, e.getMessage());
+        }
+        return rules;
+    }
+
+    /** TRUE for {@code attr} or {@code attr=true}, FALSE for {@code -attr}, {@code !attr} or {@code attr=false}. */
+    private static Boolean attribute(String token, String name) {
+        if (token.equals(name) || token.equals(name + "=true")) {
+            return Boolean.TRUE;
+        }
+        if (token.equals("-" + name) || token.equals("!" + name) || token.equals(name + "=false")) {
+            return Boolean.FALSE;
+        }
+        return null;
+    }
+}
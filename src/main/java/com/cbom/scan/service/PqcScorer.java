@@ -0,0 +1,124 @@
+package com.cbom.scan.service;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Severity-weighted PQC score, fed one finding at a time while the CBOM is
+ * built.
+ *
+ * Each distinct asset ({@link CbomBuilder#assetKey}) costs
+ * {@code severity x quantum weight x (1 + log2(occurrences))} points off 100,
+ * doubled when the rule carries a CVE. Quantum weight is highest for
+ * public-key crypto broken by Shor (RSA, ECC, DH), lower for symmetric
+ * ciphers and hashes where Grover only halves the security level, and lowest
+ * for 256-bit symmetric primitives.
+ */
+public class PqcScorer {
+  // token match: letters/digits around the name must not continue the word
+  private static final Pattern SHOR_VULNERABLE = Pattern
+      .compile("(?<![a-z0-9])(rsa|ecdsa|ecdh|ecc|ed25519|x25519|secp\\d+\\w*|dsa|dh|diffie)(?![a-z0-9])");
+  private static final Pattern CLASSICALLY_BROKEN = Pattern
+      .compile("(?<![a-z0-9])(md5|sha-?1|3?des|rc4|ecb)(?![a-z0-9])");
+
+  private static final class Asset {
+    final double weight;
+    final boolean quantumVulnerable;
+    int occurrences;
+
+    Asset(double weight, boolean quantumVulnerable) {
+      this.weight = weight;
+      this.quantumVulnerable = quantumVulnerable;
+    }
+  }
+
+  private final Map<String, Asset> assets = new HashMap<>();
+  private int findings;
+
+  public void add(String ruleId, String assetType, String primitive, String mode, String bits, String code,
+      Map<String, Object> ruleMeta) {
+    findings++;
+    String key = CbomBuilder.assetKey(ruleId, assetType, primitive, mode, bits);
+    Asset a = assets.get(key);
+    if (a == null) {
+      String s = (ruleId + " " + (code == null ? "" : code)).toLowerCase(Locale.ROOT);
+      boolean shor = isShorVulnerable(primitive, s);
+      double weight = severityWeight(ruleMeta) * quantumWeight(primitive, bits, s, shor);
+      if (hasCve(ruleMeta))
+        weight *= 2;
+      a = new Asset(weight, shor);
+      assets.put(key, a);
+    }
+    a.occurrences++;
+  }
+
+  /** 0..100, higher is better. */
+  public int score() {
+    double penalty = 0;
+    for (Asset a : assets.values()) {
+      penalty += a.weight * (1 + Math.log(a.occurrences) / Math.log(2));
+    }
+    return (int) Math.max(0, Math.round(100 - penalty));
+  }
+
+  public int findings() {
+    return findings;
+  }
+
+  /** Number of findings on public-key primitives a quantum computer breaks outright. */
+  public int quantumVulnerableFindings() {
+    int n = 0;
+    for (Asset a : assets.values()) {
+      if (a.quantumVulnerable)
+        n += a.occurrences;
+    }
+    return n;
+  }
+
+  private static double severityWeight(Map<String, Object> meta) {
+    Object sev = meta == null ? null : meta.get("severity");
+    String s = sev == null ? "" : sev.toString().toUpperCase(Locale.ROOT);
+    switch (s) {
+      case "ERROR":
+        return 3;
+      case "WARNING":
+        return 2;
+      default:
+        return 1;
+    }
+  }
+
+  private static boolean hasCve(Map<String, Object> meta) {
+    Object m = meta == null ? null : meta.get("metadata");
+    if (m instanceof Map<?, ?> md) {
+      Object cve = md.get("cve");
+      return cve != null && cve.toString().toUpperCase(Locale.ROOT).startsWith("CVE-");
+    }
+    return false;
+  }
+
+  private static boolean isShorVulnerable(String primitive, String s) {
+    return "pke".equals(primitive) || SHOR_VULNERABLE.matcher(s).find();
+  }
+
+  private static double quantumWeight(String primitive, String bits, String s, boolean shor) {
+    if (shor)
+      return 4;
+    if (CLASSICALLY_BROKEN.matcher(s).find())
+      return 3; // already broken classically
+    if ("block-cipher".equals(primitive) || "ae".equals(primitive)) {
+      if ("256".equals(bits))
+        return 0.5;
+      if ("192".equals(bits))
+        return 1;
+      return 1.5; // AES-128: Grover leaves 64-bit security
+    }
+    if ("hash".equals(primitive))
+      return s.contains("512") || s.contains("384") ? 0.25 : 0.5;
+    if ("drbg".equals(primitive))
+      return 0.5;
+    return 1;
+  }
+}
@@ -1,37 +1,386 @@
 package com.cbom.scan.service;
 
 import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import com.cbom.scan.model.ScanIds;
 import com.cbom.scan.model.ScanJob;
+import com.cbom.scan.model.ScanStatus;
+import com.cbom.scan.export.ExportedCbom;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonFactoryBuilder;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileGenerator;
+import com.google.protobuf.UnsafeByteOperations;
 import com.openhtmltopdf.pdfboxout.PdfRendererBuilder;
 
 @Service
 public class ReportService {
+    private static final Logger log = LoggerFactory.getLogger(ReportService.class);
+
     private final ObjectMapper mapper = new ObjectMapper();
+    private final JdbcTemplate jdbc;
+    private final TransactionTemplate tx;
 
-    public String buildMergedJson(ScanJob job) {
+    public ReportService(JdbcTemplate jdbc, TransactionTemplate tx) {
+        this.jdbc = jdbc;
+        this.tx = tx;
+    }
+
+    /**
+     * Wire encodings of a CBOM. All four are written by {@link CbomBuilder}
+     * from the same document and stored side by side, so a CBOM is served in
+     * any of them as stored bytes. Protobuf (CycloneDX's bom-1.6.proto) has
+     * no schema for the merged document and is offered for CBOMs only.
+     */
+    public enum Encoding {
+        JSON("application/json", "application/x-ndjson",
+                new JsonFactoryBuilder().rootValueSeparator((String) null).build(), "cbomkit_output::text"),
+        // shared string values: component names, asset types and rule ids repeat throughout a CBOM
+        SMILE("application/x-jackson-smile", "application/x-jackson-smile",
+                SmileFactory.builder().enable(SmileGenerator.Feature.CHECK_SHARED_STRING_VALUES).build(),
+                "cbom_smile"),
+        /** a bulk export is a CBOR sequence (RFC 8742) */
+        CBOR("application/cbor", "application/cbor-seq", new CBORFactory(), "cbom_cbor"),
+        /** a bulk export is a sequence of length-delimited ExportedCbom messages (cbom_export.proto) */
+        PROTOBUF("application/x.vnd.cyclonedx+protobuf; version=1.6", "application/x-protobuf; delimited=true", null,
+                "cbom_protobuf");
+
+        private final String mediaType;
+        private final String sequenceMediaType;
+        private final JsonFactory factory;
+        private final String cbomColumn;
+
+        Encoding(String mediaType, String sequenceMediaType, JsonFactory factory, String cbomColumn) {
+            this.mediaType = mediaType;
+            this.sequenceMediaType = sequenceMediaType;
+            this.factory = factory;
+            this.cbomColumn = cbomColumn;
+        }
+
+        public String mediaType() {
+            return mediaType;
+        }
+
+        /** Media type of many documents written back to back, as by {@link ReportService#export}. */
+        public String sequenceMediaType() {
+            return sequenceMediaType;
+        }
+
+        /** Whether the merged document can be written in this encoding. */
+        public boolean servesMerged() {
+            return factory != null;
+        }
+
+        /** Jackson factory of the format, null for protobuf. */
+        JsonFactory factory() {
+            return factory;
+        }
+    }
+
+    /** Stored documents that can be served for a scan. */
+    public enum Output {
+        CBOM("cbom_etag"),
+        /** {"semgrep": ..., "cbom": ..., "pqc_score": n} composed from the stored columns */
+        MERGED("merged_etag");
+
+        private final String etagColumn;
+
+        Output(String etagColumn) {
+            this.etagColumn = etagColumn;
+        }
+    }
+
+    /**
+     * Content digest of a stored document, written with the results (see
+     * {@link #etag}) so revalidation reads one short column. {@code etag} is
+     * null when there is nothing to serve yet.
+     */
+    public record Digest(String status, String etag) {
+        public boolean immutable() {
+            return ScanStatus.COMPLETED.name().equals(status) || ScanStatus.FAILED.name().equals(status);
+        }
+    }
+
+    public Optional<Digest> digest(UUID id, Output output) {
+        List<Digest> rows = jdbc.query(
+                "SELECT status, " + output.etagColumn + " AS etag FROM scan_job WHERE " + ScanIds.BY_ID,
+                (rs, n) -> new Digest(rs.getString("status"), rs.getString("etag")), ScanIds.args(id));
+        return rows.stream().findFirst();
+    }
+
+    /**
+     * Digest of the documents a scan's results produce, computed once when
+     * they are saved: the CBOM alone, or everything the merged document is
+     * composed of. Null parts count as empty.
+     */
+    public static String etag(Object... parts) {
         try {
-            var root = mapper.createObjectNode();
-            if (job.getSemgrepOutput() != null)
-                root.set("semgrep", mapper.readTree(job.getSemgrepOutput()));
-            if (job.getCbomkitOutput() != null)
-                root.set("cbom", mapper.readTree(job.getCbomkitOutput())); // <-- rename to cbom
-            root.put("pqc_score", job.getPqcScore() == null ? 0 : job.getPqcScore());
-            return mapper.writerWithDefaultPrettyPrinter().writeValueAsString(root);
-        } catch (Exception e) {
-            throw new RuntimeException(e);
+            MessageDigest md5 = MessageDigest.getInstance("MD5");
+            for (Object part : parts) {
+                if (part != null) {
+                    md5.update(part.toString().getBytes(StandardCharsets.UTF_8));
+                }
+                md5.update((byte) '|');
+            }
+            return HexFormat.of().formatHex(md5.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public void write(UUID id, Output output, OutputStream out) throws IOException {
+        write(id, output, Encoding.JSON, out);
+    }
+
+    /**
+     * Write a stored document to {@code out}. A CBOM is copied from the
+     * result set as stored in the requested encoding. The merged document is
+     * composed around the stored CBOM: as JSON from raw values, in Smile and
+     * CBOR by copying the stored CBOM's tokens, with Semgrep's own JSON
+     * output transcoded. Neither output parses the stored JSON CBOM.
+     */
+    public void write(UUID id, Output output, Encoding encoding, OutputStream out) throws IOException {
+        if (output == Output.MERGED) {
+            if (!encoding.servesMerged()) {
+                throw new IllegalArgumentException("No merged document as " + encoding);
+            }
+            jdbc.query("SELECT semgrep_output::text, pqc_score, " + cbomColumns(encoding) + " FROM scan_job WHERE "
+                    + ScanIds.BY_ID,
+                    rs -> {
+                        if (rs.next()) {
+                            try {
+                                int score = rs.getInt(2);
+                                int pqcScore = rs.wasNull() ? 0 : score;
+                                if (encoding == Encoding.JSON) {
+                                    writeMerged(rs.getString(1), rs.getString(3), null, pqcScore, encoding, out, false);
+                                } else {
+                                    // older rows have no binary CBOM; their JSON is transcoded
+                                    byte[] cbom = rs.getBytes(3);
+                                    writeMerged(rs.getString(1), cbom == null ? rs.getString(4) : null, cbom, pqcScore,
+                                            encoding, out, false);
+                                }
+                            } catch (IOException e) {
+                                throw new IllegalStateException(e);
+                            }
+                        }
+                        return null;
+                    }, ScanIds.args(id));
+            return;
+        }
+        jdbc.query("SELECT " + cbomColumns(encoding) + " FROM scan_job WHERE " + ScanIds.BY_ID, rs -> {
+            if (rs.next()) {
+                try {
+                    if (encoding == Encoding.JSON) {
+                        try (Reader reader = rs.getCharacterStream(1)) {
+                            if (reader != null) {
+                                Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+                                reader.transferTo(writer);
+                                writer.flush();
+                            }
+                        }
+                    } else {
+                        byte[] cbom = cbom(rs, 1, encoding);
+                        if (cbom != null) {
+                            out.write(cbom);
+                        }
+                    }
+                } catch (IOException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+            return null;
+        }, ScanIds.args(id));
+    }
+
+    /**
+     * Stream the CBOMs of completed scans created in {@code [from, to)},
+     * oldest first, optionally for one repository, as a sequence of
+     * {"id", "repoUrl", "createdAt", "pqcScore", "cbom"} documents: one per
+     * line as JSON, back to back in Smile and CBOR, length-delimited
+     * ExportedCbom messages in protobuf. Each CBOM is taken from its stored
+     * encoding: embedded as raw JSON or protobuf bytes, copied token by token
+     * in Smile and CBOR. Returns the number of documents written.
+     */
+    public long export(String repoUrl, Instant from, Instant to, int limit, Encoding encoding, OutputStream out) {
+        long[] count = new long[1];
+        // a transaction, so the driver honours the fetch size and streams the rows
+        tx.executeWithoutResult(status -> {
+            try (JsonGenerator gen = encoding.factory == null ? null : encoding.factory.createGenerator(out)) {
+                if (gen != null) {
+                    gen.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+                }
+                jdbc.query(con -> {
+                    PreparedStatement ps = con.prepareStatement(
+                            "SELECT id, repo_url, created_at, pqc_score, " + cbomColumns(encoding) + " FROM scan_job "
+                                    + "WHERE created_at >= ? AND created_at < ? AND status = ? "
+                                    + "AND cbomkit_output IS NOT NULL"
+                                    + (repoUrl == null ? "" : " AND repo_url = ?")
+                                    + " ORDER BY created_at LIMIT ?");
+                    int i = 1;
+                    ps.setTimestamp(i++, Timestamp.from(from));
+                    ps.setTimestamp(i++, Timestamp.from(to));
+                    ps.setString(i++, ScanStatus.COMPLETED.name());
+                    if (repoUrl != null) {
+                        ps.setString(i++, repoUrl);
+                    }
+                    ps.setInt(i, limit);
+                    ps.setFetchSize(50);
+                    return ps;
+                }, rs -> {
+                    try {
+                        Instant createdAt = rs.getTimestamp("created_at").toInstant();
+                        int score = rs.getInt("pqc_score");
+                        Integer pqcScore = rs.wasNull() ? null : score;
+                        if (encoding == Encoding.PROTOBUF) {
+                            ExportedCbom.Builder doc = ExportedCbom.newBuilder()
+                                    .setId(rs.getString("id"))
+                                    .setRepoUrl(rs.getString("repo_url"))
+                                    .setCreatedAt(com.google.protobuf.Timestamp.newBuilder()
+                                            .setSeconds(createdAt.getEpochSecond()).setNanos(createdAt.getNano()))
+                                    .setCbom(UnsafeByteOperations.unsafeWrap(cbom(rs, 5, encoding)));
+                            if (pqcScore != null) {
+                                doc.setPqcScore(pqcScore);
+                            }
+                            doc.build().writeDelimitedTo(out);
+                            count[0]++;
+                            return;
+                        }
+                        gen.writeStartObject();
+                        gen.writeStringField("id", rs.getString("id"));
+                        gen.writeStringField("repoUrl", rs.getString("repo_url"));
+                        gen.writeStringField("createdAt", createdAt.toString());
+                        if (pqcScore != null) {
+                            gen.writeNumberField("pqcScore", pqcScore);
+                        }
+                        gen.writeFieldName("cbom");
+                        if (encoding == Encoding.JSON) {
+                            gen.writeRawValue(rs.getString(5));
+                        } else {
+                            copy(gen, encoding, cbom(rs, 5, encoding));
+                        }
+                        gen.writeEndObject();
+                        if (encoding == Encoding.JSON) {
+                            gen.writeRaw('\n');
+                        }
+                        count[0]++;
+                    } catch (IOException e) {
+                        throw new IllegalStateException(e);
+                    }
+                });
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        log.info("[Report] Exported {} CBOMs as {}", count[0], encoding);
+        return count[0];
+    }
+
+    /**
+     * The stored CBOM column of an encoding, plus, for the binary ones, the
+     * JSON of rows saved before the binary encodings were (null otherwise).
+     */
+    private static String cbomColumns(Encoding encoding) {
+        if (encoding == Encoding.JSON) {
+            return encoding.cbomColumn;
+        }
+        return encoding.cbomColumn + ", CASE WHEN " + encoding.cbomColumn
+                + " IS NULL THEN cbomkit_output::text END AS cbom_json";
+    }
+
+    /**
+     * The CBOM selected by {@link #cbomColumns} at {@code column}: the stored
+     * bytes, or for older rows the stored JSON written in that encoding by the
+     * CBOM writer. Null if the scan has no CBOM.
+     */
+    private byte[] cbom(ResultSet rs, int column, Encoding encoding) throws SQLException, IOException {
+        byte[] stored = rs.getBytes(column);
+        if (stored != null) {
+            return stored;
         }
+        String json = rs.getString(column + 1);
+        return json == null ? null : CbomBuilder.write(mapper.readTree(json), encoding);
     }
 
-    public String buildCbomJson(ScanJob job) {
-        String cbom = job.getCbomkitOutput();
-        if (cbom == null || cbom.isBlank()) {
-            return "";
+    /** Embed a document stored in the generator's own binary format, copying its tokens. */
+    private static void copy(JsonGenerator gen, Encoding encoding, byte[] document) throws IOException {
+        try (JsonParser p = encoding.factory.createParser(document)) {
+            p.nextToken();
+            gen.copyCurrentStructure(p);
+        }
+    }
+
+    /** Embed a stored JSON document: verbatim as JSON, transcoded token by token otherwise. */
+    private void writeDocument(JsonGenerator gen, Encoding encoding, String json) throws IOException {
+        if (encoding == Encoding.JSON) {
+            gen.writeRawValue(json);
+            return;
+        }
+        try (JsonParser p = mapper.getFactory().createParser(json)) {
+            p.nextToken();
+            gen.copyCurrentStructure(p);
+        }
+    }
+
+    /** The CBOM is given either as JSON or as a document in the (binary) {@code encoding}. */
+    private void writeMerged(String semgrep, String cbomJson, byte[] cbom, int score, Encoding encoding,
+            OutputStream out, boolean pretty) throws IOException {
+        try (JsonGenerator gen = encoding.factory.createGenerator(out)) {
+            gen.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            if (pretty) {
+                gen.useDefaultPrettyPrinter();
+            }
+            gen.writeStartObject();
+            if (semgrep != null) {
+                gen.writeFieldName("semgrep");
+                writeDocument(gen, encoding, semgrep);
+            }
+            if (cbomJson != null) {
+                gen.writeFieldName("cbom"); // <-- rename to cbom
+                writeDocument(gen, encoding, cbomJson);
+            } else if (cbom != null) {
+                gen.writeFieldName("cbom");
+                copy(gen, encoding, cbom);
+            }
+            gen.writeNumberField("pqc_score", score);
+            gen.writeEndObject();
+        }
+    }
+
+    public String buildMergedJson(ScanJob job) {
+        try (ByteArrayOutputStream os = new ByteArrayOutputStream()) {
+            writeMerged(job.getSemgrepOutput(), job.getCbomkitOutput(), null,
+                    job.getPqcScore() == null ? 0 : job.getPqcScore(), Encoding.JSON, os, true);
+            return os.toString(StandardCharsets.UTF_8);
+        } catch (Exception e) {
+            throw new RuntimeException(e);
         }
-        return cbom;
     }
 
     public byte[] generatePdf(ScanJob job) {
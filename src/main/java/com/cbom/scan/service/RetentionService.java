@@ -0,0 +1,194 @@
+package com.cbom.scan.service;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+/**
+ * Maintains the monthly scan_job partitions (see V3__partition_scan_job.sql
+ * and V7__scan_job_partition_maintenance.sql).
+ *
+ * Upcoming months are created ahead of time: there is no default partition,
+ * so an insert for a month without one fails. Partitions older than {@code scanner.retention.keep-months}
+ * are exported to {@code <archive-dir>/scan_job_YYYY_MM.ndjson.gz} (one row per
+ * line, JSON rendered by Postgres) and then detached concurrently and
+ * dropped. Each partition is handled under an advisory lock, so several
+ * instances can run the job safely.
+ */
+@Service
+public class RetentionService {
+    private static final Logger log = LoggerFactory.getLogger(RetentionService.class);
+    private static final DateTimeFormatter SUFFIX = DateTimeFormatter.ofPattern("yyyy_MM");
+    private static final String PREFIX = "scan_job_";
+
+    private final JdbcTemplate jdbc;
+    private final int keepMonths;
+    private final int aheadMonths;
+    private final Path archiveDir;
+
+    public RetentionService(JdbcTemplate jdbc,
+            @Value("${scanner.retention.keep-months:0}") int keepMonths,
+            @Value("${scanner.retention.ahead-months:2}") int aheadMonths,
+            @Value("${scanner.retention.archive-dir:archive}") String archiveDir) {
+        this.jdbc = jdbc;
+        this.keepMonths = keepMonths;
+        this.aheadMonths = aheadMonths;
+        this.archiveDir = Path.of(archiveDir);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onStartup() {
+        try {
+            ensurePartitions();
+        } catch (Exception e) {
+            log.warn("[Retention] Could not create upcoming partitions: {}", e.getMessage());
+        }
+    }
+
+    @Scheduled(cron = "${scanner.retention.cron:0 30 3 * * *}")
+    public void run() {
+        ensurePartitions();
+        if (keepMonths <= 0) {
+            return;
+        }
+        YearMonth oldestKept = YearMonth.now(ZoneOffset.UTC).minusMonths(keepMonths - 1L);
+        for (String partition : monthPartitions()) {
+            YearMonth month = YearMonth.parse(partition.substring(PREFIX.length()), SUFFIX);
+            if (month.isBefore(oldestKept)) {
+                try {
+                    archiveAndDrop(partition);
+                } catch (Exception e) {
+                    log.error("[Retention] Failed to archive {}: {}", partition, e.getMessage());
+                }
+            }
+        }
+    }
+
+    private void ensurePartitions() {
+        LocalDate month = YearMonth.now(ZoneOffset.UTC).atDay(1);
+        for (int i = 0; i <= aheadMonths; i++) {
+            jdbc.queryForList("SELECT ensure_scan_job_partition(?)", month.plusMonths(i));
+        }
+    }
+
+    private List<String> monthPartitions() {
+        return jdbc.queryForList("SELECT c.relname FROM pg_inherits i "
+                + "JOIN pg_class c ON c.oid = i.inhrelid JOIN pg_class p ON p.oid = i.inhparent "
+                + "WHERE p.relname = 'scan_job' AND c.relname ~ '^scan_job_[0-9]{4}_[0-9]{2}$' ORDER BY c.relname",
+                String.class);
+    }
+
+    /**
+     * Export, detach and drop one partition on a single connection: the
+     * advisory lock is session-level because DETACH ... CONCURRENTLY cannot
+     * run inside a transaction. It only takes SHARE UPDATE EXCLUSIVE on
+     * scan_job, so scans keep being created and read meanwhile. A detach that
+     * was interrupted leaves the partition pending and is finalized here.
+     */
+    private void archiveAndDrop(String partition) throws IOException {
+        Files.createDirectories(archiveDir);
+        Path target = archiveDir.resolve(partition + ".ndjson.gz");
+        Path tmp = archiveDir.resolve(partition + ".ndjson.gz.tmp");
+        jdbc.execute((ConnectionCallback<Void>) con -> {
+            if (!queryBoolean(con, "SELECT pg_try_advisory_lock(hashtext(?))", partition)) {
+                return null; // another instance has it
+            }
+            try {
+                Boolean pending = detachPending(con, partition);
+                if (pending == null) {
+                    return null; // already gone
+                }
+                long rows = export(con, partition, tmp);
+                try {
+                    Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                try (Statement st = con.createStatement()) {
+                    st.execute("ALTER TABLE scan_job DETACH PARTITION " + partition
+                            + (pending ? " FINALIZE" : " CONCURRENTLY"));
+                    st.execute("DROP TABLE " + partition);
+                }
+                log.info("[Retention] Archived {} rows of {} to {} and dropped the partition", rows, partition, target);
+            } finally {
+                queryBoolean(con, "SELECT pg_advisory_unlock(hashtext(?))", partition);
+            }
+            return null;
+        });
+    }
+
+    /** Whether the partition's detach is pending, or null once it is no longer attached. */
+    private static Boolean detachPending(Connection con, String partition) throws SQLException {
+        try (PreparedStatement ps = con.prepareStatement("SELECT i.inhdetachpending FROM pg_inherits i "
+                + "JOIN pg_class c ON c.oid = i.inhrelid JOIN pg_class p ON p.oid = i.inhparent "
+                + "WHERE p.relname = 'scan_job' AND c.relname = ?")) {
+            ps.setString(1, partition);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? rs.getBoolean(1) : null;
+            }
+        }
+    }
+
+    private static boolean queryBoolean(Connection con, String sql, String arg) throws SQLException {
+        try (PreparedStatement ps = con.prepareStatement(sql)) {
+            ps.setString(1, arg);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() && rs.getBoolean(1);
+            }
+        }
+    }
+
+    /** Stream the partition to a gzipped NDJSON file; returns the row count. */
+    private static long export(Connection con, String partition, Path file) throws SQLException {
+        long rows = 0;
+        // a transaction, so the driver honours the fetch size and streams the rows
+        con.setAutoCommit(false);
+        try (Writer out = new BufferedWriter(new OutputStreamWriter(
+                new GZIPOutputStream(Files.newOutputStream(file), 64 * 1024), StandardCharsets.UTF_8));
+                // the binary CBOM encodings are derived from cbomkit_output, so they are not archived
+                PreparedStatement ps = con.prepareStatement("SELECT (to_jsonb(t) - 'cbom_smile' - 'cbom_cbor' "
+                        + "- 'cbom_protobuf')::text FROM " + partition + " t ORDER BY created_at")) {
+            ps.setFetchSize(500);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    out.write(rs.getString(1));
+                    out.write('\n');
+                    rows++;
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            con.commit();
+            con.setAutoCommit(true);
+        }
+        return rows;
+    }
+}
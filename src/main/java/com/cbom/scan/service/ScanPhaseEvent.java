@@ -0,0 +1,43 @@
+package com.cbom.scan.service;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JDK Flight Recorder event covering one phase of a scan job (clone,
+ * classify, language, semgrep, cbom, persist). Recorded only when a JFR
+ * recording with this event enabled is running. The counters are those known
+ * when the phase ends: the clone phase reports the checkout, classify what is
+ * left to scan, semgrep its result count and cbom the scored findings.
+ */
+@Name("com.cbom.scan.ScanPhase")
+@Label("Scan Phase")
+@Category({ "CBOM Scanner" })
+@Description("One phase of a scan job")
+@StackTrace(false)
+class ScanPhaseEvent extends jdk.jfr.Event {
+    @Label("Job Id")
+    String jobId;
+
+    @Label("Repository")
+    String repoUrl;
+
+    @Label("Phase")
+    String phase;
+
+    @Label("Workspace Size")
+    @Description("Workspace bytes once the phase ended; 0 before the clone is measured")
+    @DataAmount
+    long bytes;
+
+    @Label("Files")
+    long files;
+
+    @Label("Findings")
+    @Description("Semgrep results after the semgrep phase, scored findings from the cbom phase on")
+    int findings;
+}
@@ -0,0 +1,103 @@
+package com.cbom.scan.service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Times the phases of one scan job. Phases run back to back: {@link #begin}
+ * ends the open phase and starts the next. Each phase is emitted as a
+ * {@link ScanPhaseEvent} and its duration kept for the job's scan_metrics.
+ * Events carry the counters as they stand when the phase ends, so a phase's
+ * own counts must be recorded before the next {@link #begin}.
+ */
+class ScanTimer {
+    private static final ObjectMapper M = new ObjectMapper();
+
+    private final String jobId;
+    private final String repoUrl;
+    private final long startNanos = System.nanoTime();
+    private final Map<String, Long> phases = new LinkedHashMap<>();
+
+    private String current;
+    private long currentStart;
+    private ScanPhaseEvent event;
+
+    private long bytes;
+    private long files;
+    private int findings;
+    private FileClassifier.Stats skipped;
+
+    ScanTimer(UUID jobId, String repoUrl) {
+        this.jobId = jobId.toString();
+        this.repoUrl = repoUrl;
+    }
+
+    void begin(String phase) {
+        end();
+        current = phase;
+        currentStart = System.nanoTime();
+        event = new ScanPhaseEvent();
+        event.begin();
+    }
+
+    /** End the open phase, if any. */
+    void end() {
+        if (current == null) {
+            return;
+        }
+        phases.put(current, (System.nanoTime() - currentStart) / 1_000_000);
+        event.end();
+        if (event.shouldCommit()) {
+            event.jobId = jobId;
+            event.repoUrl = repoUrl;
+            event.phase = current;
+            event.bytes = bytes;
+            event.files = files;
+            event.findings = findings;
+            event.commit();
+        }
+        current = null;
+        event = null;
+    }
+
+    void workspace(WorkspaceManager.Usage usage) {
+        this.bytes = usage.bytes();
+        this.files = usage.files();
+    }
+
+    void skipped(FileClassifier.Stats skipped) {
+        this.skipped = skipped;
+    }
+
+    void findings(int findings) {
+        this.findings = findings;
+    }
+
+    /**
+     * Compact JSON record of the phases ended so far, e.g.
+     * {"phases":{"clone":812,...},"totalMs":2301,"workspaceBytes":..,"files":..,"findings":..,
+     * "skipped":{"files":..,"bytes":..,"generated":..,...}}
+     */
+    String toJson() {
+        ObjectNode n = M.createObjectNode();
+        ObjectNode p = n.putObject("phases");
+        phases.forEach(p::put);
+        n.put("totalMs", (System.nanoTime() - startNanos) / 1_000_000);
+        n.put("workspaceBytes", bytes);
+        n.put("files", files);
+        n.put("findings", findings);
+        if (skipped != null) {
+            ObjectNode s = n.putObject("skipped");
+            s.put("files", skipped.total());
+            s.put("bytes", skipped.bytes());
+            for (FileClassifier.Reason r : FileClassifier.Reason.values()) {
+                s.put(r.key(), skipped.files().getOrDefault(r, 0));
+            }
+        }
+        return n.toString();
+    }
+}
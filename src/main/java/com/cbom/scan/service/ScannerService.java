@@ -10,8 +10,11 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import com.cbom.scan.model.ScanStatus;
 import com.cbom.scan.repo.ScanJobRepository;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -23,23 +26,46 @@ import org.slf4j.LoggerFactory;
 public class ScannerService {
     private static final Logger log = LoggerFactory.getLogger(ScannerService.class);
     private final ScanJobRepository repo;
+    private final TransactionTemplate tx;
+    private final SemgrepBatcher semgrep;
+    private final WorkspaceManager workspaces;
+    private final ScoreHistoryService scores;
+    private final ShardService shards;
+    private final FileClassifier classifier;
+    private final boolean aggregateCbom;
+    private final String semgrepScript;
 
-    public ScannerService(ScanJobRepository repo) {
+    public ScannerService(ScanJobRepository repo, TransactionTemplate tx, SemgrepBatcher semgrep,
+            WorkspaceManager workspaces, ScoreHistoryService scores, ShardService shards, FileClassifier classifier,
+            @Value("${scanner.cbom.aggregate:false}") boolean aggregateCbom,
+            @Value("${scanner.semgrep.script:${user.dir}/scanner-scripts/run-semgrep.sh}") String semgrepScript) {
         this.repo = repo;
+        this.tx = tx;
+        this.semgrep = semgrep;
+        this.workspaces = workspaces;
+        this.scores = scores;
+        this.shards = shards;
+        this.classifier = classifier;
+        this.aggregateCbom = aggregateCbom;
+        this.semgrepScript = semgrepScript;
     }
 
     @Async
     public void run(UUID jobId) {
         Path workspace = null;
-        var job = repo.findById(jobId).orElseThrow();
+        var job = repo.findJob(jobId).orElseThrow();
+        if (!transition(jobId, ScanStatus.RUNNING)) {
+            log.warn("[Scanner] Job {} is {}, not starting it", jobId, job.getStatus());
+            return;
+        }
+        job.setStatus(ScanStatus.RUNNING.name());
         log.info("[Scanner] Running job: {}", jobId);
+        ScanTimer timer = new ScanTimer(jobId, job.getRepoUrl());
         try {
-            job.setStatus("RUNNING");
-            repo.save(job);
-
-            workspace = Files.createTempDirectory("scan-" + jobId);
+            workspace = workspaces.allocate(jobId.toString());
             String ref = job.getRef();
 
+            timer.begin("clone");
             try {
                 log.info("[Scanner] Cloning {} (ref={}) to {}", job.getRepoUrl(), ref, workspace);
                 if (ref != null && !ref.isBlank()) {
@@ -69,6 +95,16 @@ public class ScannerService {
                 }
 
             }
+            // measured inside the phase so its event carries the checkout size
+            WorkspaceManager.Usage cloned = workspaces.charge(workspace);
+            timer.workspace(cloned);
+            // drop generated, vendored, minified and oversized files before anything scans them
+            timer.begin("classify");
+            FileClassifier.Stats skipped = classifier.prune(workspace);
+            timer.skipped(skipped);
+            WorkspaceManager.Usage usage = workspaces.credit(workspace, cloned, skipped.total(), skipped.bytes());
+            timer.workspace(usage);
+            timer.begin("language");
             String detectedLanguage = null;
 
             // Detect primary language using 'github-linguist' if available, else fallback
@@ -138,21 +174,38 @@ public class ScannerService {
 
             // if (!"cbomkit".equalsIgnoreCase(job.getTool())) {
             log.info("[Scanner] Running Semgrep scan...");
+            timer.begin("semgrep");
             String lang = job.getDetectedLanguage() != null ? job.getDetectedLanguage().toLowerCase() : "generic";
             String semgrepConfig = System.getProperty("user.dir") + "/scanner-scripts/rules/" + lang + ".yml";
-            String semgrepScript = System.getProperty("user.dir") + "/scanner-scripts/run-semgrep.sh";
-            String semOut = runScript(semgrepScript, workspace.toString(), semgrepConfig, lang);
+            String semOut = shards.shouldShard(usage.files())
+                    ? shards.scan(jobId, job.getRepoUrl(), workspace, semgrepConfig, lang)
+                    : semgrep.scan(semgrepScript, semgrepConfig, lang, workspace, usage.files());
             job.setSemgrepOutput(semOut);
-            // Build a compliant CBOM from Semgrep results
+            // parsed here so the semgrep phase reports its result count
+            JsonNode sem = null;
+            String cbomError = null;
             try {
-                ObjectMapper mapper = new ObjectMapper();
-                JsonNode sem = mapper.readTree(semOut);
-                String cbom = new CbomBuilder().fromSemgrep(job, sem, semgrepConfig);
-                job.setCbomkitOutput(cbom);
+                sem = new ObjectMapper().readTree(semOut);
+                timer.findings(sem.path("results").size());
+            } catch (Exception e) {
+                log.error("[Scanner] Failed to parse Semgrep results: {}", e.getMessage());
+                cbomError = e.getMessage();
+            }
+            // Build a compliant CBOM from Semgrep results, scoring findings in the same pass
+            timer.begin("cbom");
+            PqcScorer scorer = new PqcScorer();
+            // every encoding the CBOM is served in, written from the same document
+            CbomBuilder.Encoded cbom = null;
+            try {
+                if (sem != null) {
+                    cbom = new CbomBuilder(aggregateCbom).build(job, sem, semgrepConfig, scorer);
+                    job.setCbomkitOutput(cbom.json());
+                }
             } catch (Exception e) {
                 log.error("[Scanner] Failed to transform Semgrep results to CBOM: {}", e.getMessage());
                 e.printStackTrace();
                 // leave cbomkitOutput as-is if transform fails
+                cbomError = e.getMessage();
             }
             // }
             /*
@@ -164,22 +217,15 @@ public class ScannerService {
              * }
              */
 
-            int score = 100;
-            try {
-                ObjectMapper mapper = new ObjectMapper();
-                if (job.getSemgrepOutput() != null) {
-                    JsonNode node = mapper.readTree(job.getSemgrepOutput());
-                    int cnt = node.has("results") ? node.get("results").size() : 0;
-                    score = Math.max(0, 100 - cnt * 5);
-                }
-            } catch (Exception ignored) {
-                log.error("[Scanner] Failed to calculate PQC score: {}", ignored.getMessage());
-                ignored.printStackTrace();
-            }
-            job.setPqcScore(score);
+            // a scorer that saw no findings because the transform broke would report a perfect 100
+            job.setPqcScore(cbomError == null ? scorer.score() : null);
+            timer.findings(scorer.findings());
 
-            job.setStatus("COMPLETED");
-            job.setUpdatedAt(Instant.now());
+            job.setStatus(ScanStatus.COMPLETED.name());
+            if (cbomError != null) {
+                job.setStatus(ScanStatus.FAILED.name());
+                job.setErrorMessage("Failed to build CBOM: " + cbomError);
+            }
             // Validate cbomkitOutput and semgrepOutput as JSON before saving
             boolean validCbom = true, validSemgrep = true;
             try {
@@ -205,83 +251,57 @@ public class ScannerService {
                 validSemgrep = false;
             }
             if (!validCbom || !validSemgrep) {
-                job.setStatus("FAILED");
+                job.setStatus(ScanStatus.FAILED.name());
                 job.setErrorMessage("Invalid JSON output detected. See logs for details.");
+                job.setPqcScore(null);
+            }
+            // Results are written once, together with the final status
+            timer.end();
+            job.setScanMetrics(timer.toJson());
+            timer.begin("persist");
+            ScanStatus finalStatus = ScanStatus.valueOf(job.getStatus());
+            String cbomEtag = job.getCbomkitOutput() == null ? null : ReportService.etag(job.getCbomkitOutput());
+            String mergedEtag = ReportService.etag(job.getSemgrepOutput(), job.getCbomkitOutput(), job.getPqcScore());
+            CbomBuilder.Encoded encoded = job.getCbomkitOutput() == null ? null : cbom;
+            int updated = tx.execute(status -> {
+                int n = repo.saveResults(jobId, finalStatus.name(), ScanStatus.sourcesOf(finalStatus),
+                        job.getSemgrepOutput(), job.getCbomkitOutput(), job.getPqcScore(), job.getDetectedLanguage(),
+                        job.getErrorMessage(), job.getScanMetrics(), cbomEtag, mergedEtag, Instant.now());
+                if (n > 0 && encoded != null) {
+                    repo.saveEncodings(jobId, encoded.smile(), encoded.cbor(), encoded.protobuf());
+                }
+                return n;
+            });
+            timer.end();
+            if (updated == 0) {
+                throw new IllegalStateException("Job " + jobId + " can no longer move to " + finalStatus);
+            }
+            if (finalStatus == ScanStatus.COMPLETED) {
+                try {
+                    scores.record(jobId, job.getRepoUrl(), scorer);
+                } catch (Exception e) {
+                    log.warn("[Scanner] Failed to record score history for {}: {}", jobId, e.getMessage());
+                }
             }
-            repo.save(job);
             log.info("[Scanner] Job completed: {}", jobId);
         } catch (Exception e) {
             log.error("[Scanner] Job failed: {}: {}", jobId, e.getMessage());
             e.printStackTrace();
-            // mark job as FAILED
-            job.setStatus("FAILED");
-            job.setErrorMessage(e.getMessage());
-            repo.save(job);
+            // mark job as FAILED, keeping the timings of the phases that ran; no results were saved, so the
+            // merged document is just {"pqc_score":0}
+            timer.end();
+            repo.updateStatus(jobId, ScanStatus.FAILED.name(), ScanStatus.sourcesOf(ScanStatus.FAILED),
+                    e.getMessage(), timer.toJson(), ReportService.etag(null, null, null), Instant.now());
         } finally {
             if (workspace != null) {
-                try {
-                    java.nio.file.Files.walk(workspace)
-                            .sorted(java.util.Comparator.reverseOrder())
-                            .map(java.nio.file.Path::toFile)
-                            .forEach(java.io.File::delete);
-                    log.info("Deleted workspace: {}", workspace);
-                } catch (Exception cleanupEx) {
-                    log.warn("Failed to delete workspace {}: {}", workspace, cleanupEx.getMessage());
-                }
+                workspaces.release(workspace);
             }
         }
     }
 
-    private String runScript(String scriptPath, String... args) throws Exception {
-        List<String> cmd = new ArrayList<>();
-        log.info("[Scanner] Executing script: {} {}", scriptPath,
-                String.join(" ", args != null ? args : new String[] {}));
-        cmd.add("sh");
-        cmd.add(scriptPath);
-        if (args != null) {
-            for (String arg : args) {
-                cmd.add(arg);
-            }
-        }
-        ProcessBuilder pb = new ProcessBuilder(cmd);
-        pb.directory(new File(System.getProperty("user.dir")));
-        pb.redirectErrorStream(true);
-        Process p = pb.start();
-        // Capture console output
-        StringBuilder consoleOutput = new StringBuilder();
-        try (BufferedReader br = new BufferedReader(new InputStreamReader(p.getInputStream()))) {
-            String line;
-            while ((line = br.readLine()) != null)
-                consoleOutput.append(line).append("\n");
-        }
-        int rc = p.waitFor();
-        log.info("Return code: {}", rc);
-        // System.out.println("[Scanner] Script console output:\n" +
-        // consoleOutput.toString());
-        // Determine workspace path from args
-        String workspacePath = (args != null && args.length > 0) ? args[0] : null;
-        String semgrepOutPath = null;
-        if (workspacePath != null) {
-            semgrepOutPath = workspacePath + "/semgrep-out.json";
-        }
-        String result = null;
-        if (semgrepOutPath != null && new File(semgrepOutPath).exists()) {
-            result = new String(java.nio.file.Files.readAllBytes(java.nio.file.Paths.get(semgrepOutPath)));
-        } /*
-           * else {
-           * // fallback: use console output
-           * result = consoleOutput.toString();
-           * }
-           */
-        // log.info("Script output:\n{}", result);
-        // System.out.println("[Scanner] Semgrep JSON output:\n" + result);
-        if (rc != 0) {
-            log.error("[Scanner] Job failed: {}: Script failed: {}\nOutput:\n{}",
-                    args != null && args.length > 0 ? args[0] : "",
-                    scriptPath, result);
-            throw new RuntimeException("Script failed: " + scriptPath);
-        }
-        return result;
+    /** Apply a guarded status transition; false if the job is not in a source state. */
+    private boolean transition(UUID jobId, ScanStatus target) {
+        return repo.updateStatus(jobId, target.name(), ScanStatus.sourcesOf(target), Instant.now()) > 0;
     }
 
     private void exec(String[] cmd) throws Exception {
@@ -0,0 +1,66 @@
+package com.cbom.scan.service;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Per-repo PQC score time series. Every completed scan appends a row to
+ * pqc_score_history and folds its score into the repo's pqc_score_daily row,
+ * so trend queries read the pre-aggregated table instead of scan_job.
+ */
+@Service
+public class ScoreHistoryService {
+    private final JdbcTemplate jdbc;
+
+    public ScoreHistoryService(JdbcTemplate jdbc) {
+        this.jdbc = jdbc;
+    }
+
+    @Transactional
+    public void record(UUID scanId, String repoUrl, PqcScorer scorer) {
+        Instant now = Instant.now();
+        int score = scorer.score();
+        jdbc.update("INSERT INTO pqc_score_history (repo_url, scored_at, scan_id, score, findings, quantum_vulnerable) "
+                + "VALUES (?, ?, ?, ?, ?, ?)",
+                repoUrl, Timestamp.from(now), scanId, score, scorer.findings(), scorer.quantumVulnerableFindings());
+        jdbc.update("INSERT INTO pqc_score_daily AS d "
+                + "(repo_url, day, scans, score_sum, score_min, score_max, last_score, last_scored_at) "
+                + "VALUES (?, ?, 1, ?, ?, ?, ?, ?) "
+                + "ON CONFLICT (repo_url, day) DO UPDATE SET "
+                + "scans = d.scans + 1, score_sum = d.score_sum + EXCLUDED.score_sum, "
+                + "score_min = LEAST(d.score_min, EXCLUDED.score_min), "
+                + "score_max = GREATEST(d.score_max, EXCLUDED.score_max), "
+                + "last_score = EXCLUDED.last_score, last_scored_at = EXCLUDED.last_scored_at",
+                repoUrl, now.atOffset(ZoneOffset.UTC).toLocalDate(), score, score, score, score, Timestamp.from(now));
+    }
+
+    /** Daily rollups of one repo, oldest first. */
+    public List<Map<String, Object>> daily(String repoUrl, LocalDate from, LocalDate to) {
+        return jdbc.queryForList("SELECT day, scans, score_sum::float8 / scans AS avg_score, score_min, score_max, "
+                + "last_score FROM pqc_score_daily WHERE repo_url = ? AND day BETWEEN ? AND ? ORDER BY day",
+                repoUrl, from, to);
+    }
+
+    /** Fleet-wide daily trend across all repos, oldest first. */
+    public List<Map<String, Object>> fleetDaily(LocalDate from, LocalDate to) {
+        return jdbc.queryForList("SELECT day, COUNT(*) AS repos, SUM(scans) AS scans, "
+                + "SUM(score_sum)::float8 / SUM(scans) AS avg_score, MIN(score_min) AS score_min, "
+                + "AVG(last_score)::float8 AS avg_last_score FROM pqc_score_daily "
+                + "WHERE day BETWEEN ? AND ? GROUP BY day ORDER BY day", from, to);
+    }
+
+    /** Individual scores of one repo, newest first. */
+    public List<Map<String, Object>> history(String repoUrl, int limit) {
+        return jdbc.queryForList("SELECT scored_at, scan_id, score, findings, quantum_vulnerable "
+                + "FROM pqc_score_history WHERE repo_url = ? ORDER BY scored_at DESC LIMIT ?", repoUrl, limit);
+    }
+}
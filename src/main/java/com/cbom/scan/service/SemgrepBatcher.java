@@ -0,0 +1,252 @@
+package com.cbom.scan.service;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Runs Semgrep for scan workspaces. Small workspaces that share a ruleset are
+ * queued for a short window and scanned by a single Semgrep invocation, so the
+ * process startup and rule compilation cost is paid once per batch instead of
+ * once per job. Results are split back per workspace by {@code results[].path}.
+ */
+@Component
+public class SemgrepBatcher {
+    private static final Logger log = LoggerFactory.getLogger(SemgrepBatcher.class);
+    private static final ObjectMapper M = new ObjectMapper();
+
+    private final int batchSize;
+    private final long waitMillis;
+    private final int maxFiles;
+
+    private final Map<String, List<Pending>> queues = new HashMap<>();
+    private final ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "semgrep-batcher");
+        t.setDaemon(true);
+        return t;
+    });
+    private final ExecutorService runner = Executors.newCachedThreadPool(r -> {
+        Thread t = new Thread(r, "semgrep-batch");
+        t.setDaemon(true);
+        return t;
+    });
+
+    public SemgrepBatcher(@Value("${scanner.batch.size:8}") int batchSize,
+            @Value("${scanner.batch.wait-ms:750}") long waitMillis,
+            @Value("${scanner.batch.max-files:2000}") int maxFiles) {
+        this.batchSize = batchSize;
+        this.waitMillis = waitMillis;
+        this.maxFiles = maxFiles;
+    }
+
+    private record Pending(Path workspace, CompletableFuture<String> result) {
+    }
+
+    /**
+     * Scan a workspace and return its Semgrep JSON output. Workspaces with at
+     * most {@code scanner.batch.max-files} files are batched with other small
+     * workspaces using the same config and language.
+     */
+    public String scan(String script, String config, String lang, Path workspace, long fileCount) throws Exception {
+        if (batchSize <= 1 || fileCount > maxFiles) {
+            return runScript(script, workspace.toString(), config, lang);
+        }
+        CompletableFuture<String> result = new CompletableFuture<>();
+        enqueue(script, config, lang, new Pending(workspace, result));
+        try {
+            return result.get();
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof Exception ex ? ex : e;
+        }
+    }
+
+    private void enqueue(String script, String config, String lang, Pending pending) {
+        String key = script + "\n" + config + "\n" + lang;
+        List<Pending> ready = null;
+        synchronized (queues) {
+            List<Pending> queue = queues.get(key);
+            if (queue == null) {
+                queue = new ArrayList<>();
+                queues.put(key, queue);
+                List<Pending> scheduled = queue;
+                flusher.schedule(() -> flush(key, scheduled, script, config, lang), waitMillis,
+                        TimeUnit.MILLISECONDS);
+            }
+            queue.add(pending);
+            if (queue.size() >= batchSize) {
+                ready = queues.remove(key);
+            }
+        }
+        if (ready != null) {
+            runBatch(script, config, lang, ready);
+        }
+    }
+
+    /**
+     * Timed flush of the queue the timer was scheduled for. If that queue
+     * already filled up and ran, a newer queue may sit under the same key; it
+     * has its own timer and is left alone.
+     */
+    private void flush(String key, List<Pending> queue, String script, String config, String lang) {
+        List<Pending> ready;
+        synchronized (queues) {
+            ready = queues.remove(key, queue) ? queue : null;
+        }
+        if (ready != null) {
+            List<Pending> batch = ready;
+            runner.execute(() -> runBatch(script, config, lang, batch));
+        }
+    }
+
+    private void runBatch(String script, String config, String lang, List<Pending> batch) {
+        if (batch.size() == 1) {
+            Pending only = batch.get(0);
+            try {
+                only.result().complete(runScript(script, only.workspace().toString(), config, lang));
+            } catch (Exception e) {
+                only.result().completeExceptionally(e);
+            }
+            return;
+        }
+        try {
+            List<Path> targets = new ArrayList<>();
+            for (Pending p : batch) {
+                targets.add(p.workspace());
+            }
+            log.info("[Semgrep] Batched invocation over {} workspaces ({})", batch.size(), lang);
+            String out = scanTargets(script, config, lang, targets);
+            JsonNode merged = out == null ? M.createObjectNode() : M.readTree(out);
+            for (Pending p : batch) {
+                p.result().complete(demux(merged, p.workspace()).toString());
+            }
+        } catch (Exception e) {
+            for (Pending p : batch) {
+                p.result().completeExceptionally(e);
+            }
+        }
+    }
+
+    /**
+     * Scan explicit targets (directories or files) in one invocation, writing
+     * the output to a temporary directory rather than into any of them.
+     */
+    public String scanTargets(String script, String config, String lang, List<Path> targets) throws Exception {
+        Path outDir = null;
+        try {
+            outDir = Files.createTempDirectory("semgrep-batch-");
+            List<String> args = new ArrayList<>();
+            args.add(outDir.toString());
+            args.add(config);
+            args.add(lang);
+            for (Path target : targets) {
+                args.add(target.toString());
+            }
+            return runScript(script, args.toArray(new String[0]));
+        } finally {
+            if (outDir != null) {
+                try {
+                    Files.deleteIfExists(outDir.resolve("semgrep-out.json"));
+                    Files.deleteIfExists(outDir);
+                } catch (Exception ignored) {
+                }
+            }
+        }
+    }
+
+    /**
+     * Keep only the results and errors whose path lies under the given
+     * workspace. Errors without a path (rule or invocation errors) concern
+     * every workspace of the batch and are kept. Other top-level fields
+     * (version, etc.) are copied as-is.
+     */
+    static ObjectNode demux(JsonNode merged, Path workspace) {
+        String prefix = workspace.toString().endsWith("/") ? workspace.toString() : workspace + "/";
+        ObjectNode out = M.createObjectNode();
+        merged.fields().forEachRemaining(e -> {
+            String name = e.getKey();
+            if ("results".equals(name) || "errors".equals(name)) {
+                ArrayNode kept = out.putArray(name);
+                for (JsonNode item : e.getValue()) {
+                    String path = item.path("path").asText("");
+                    if (path.startsWith(prefix) || "errors".equals(name) && path.isEmpty()) {
+                        kept.add(item);
+                    }
+                }
+            } else if (!"paths".equals(name)) {
+                out.set(name, e.getValue());
+            }
+        });
+        if (!out.has("results")) {
+            out.putArray("results");
+        }
+        return out;
+    }
+
+    @PreDestroy
+    void shutdown() {
+        flusher.shutdownNow();
+        runner.shutdownNow();
+    }
+
+    String runScript(String scriptPath, String... args) throws Exception {
+        List<String> cmd = new ArrayList<>();
+        log.info("[Scanner] Executing script: {} {}", scriptPath,
+                String.join(" ", args != null ? args : new String[] {}));
+        cmd.add("sh");
+        cmd.add(scriptPath);
+        if (args != null) {
+            for (String arg : args) {
+                cmd.add(arg);
+            }
+        }
+        ProcessBuilder pb = new ProcessBuilder(cmd);
+        pb.directory(new File(System.getProperty("user.dir")));
+        pb.redirectErrorStream(true);
+        Process p = pb.start();
+        try (BufferedReader br = new BufferedReader(new InputStreamReader(p.getInputStream()))) {
+            while (br.readLine() != null) {
+            }
+        }
+        int rc = p.waitFor();
+        log.info("Return code: {}", rc);
+        // The script writes its JSON to <first arg>/semgrep-out.json
+        String workspacePath = (args != null && args.length > 0) ? args[0] : null;
+        String result = null;
+        if (workspacePath != null) {
+            Path out = Path.of(workspacePath, "semgrep-out.json");
+            if (Files.exists(out)) {
+                result = Files.readString(out);
+            }
+        }
+        if (rc != 0) {
+            log.error("[Scanner] Job failed: {}: Script failed: {}\nOutput:\n{}",
+                    workspacePath != null ? workspacePath : "", scriptPath, result);
+            throw new RuntimeException("Script failed: " + scriptPath);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,609 @@
+package com.cbom.scan.service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import javax.sql.DataSource;
+
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.cbom.scan.model.ScanStatus;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Map-reduce scanning of very large repositories.
+ *
+ * The job's worker (the coordinator) splits its checkout into shards of at
+ * most {@code scanner.shard.files-per-shard} files: directories that fit are
+ * kept whole, larger ones are split into their files and subdirectories, and
+ * the pieces are bin-packed. Shards are rows in scan_shard, announced on the
+ * {@code scan_shards} channel (payload: the job id, whose shards a woken
+ * worker claims first) and claimed with {@code FOR UPDATE SKIP LOCKED} by any
+ * worker, the coordinator included. A worker scans a shard in place
+ * when the coordinator's checkout is visible to it (same node or a shared
+ * workspace volume), otherwise from a blobless sparse clone of just the
+ * shard's paths at the same commit. Shard paths are rebased onto the
+ * coordinator's checkout, so the reduce step (concatenating results and
+ * errors) yields the same Semgrep output as a single-node scan. A worker
+ * renews its lease while it scans; any worker looking for a shard first
+ * requeues those whose lease ran out, so a dead worker's shards are picked up
+ * even if their coordinator is gone too.
+ *
+ * Once nothing is left to claim, the coordinator blocks until a shard of its
+ * job completes or fails, announced on {@code scan_shard_done}. One LISTEN
+ * connection per process serves all its coordinators. The wait times out
+ * after a third of the lease, the only case a notification cannot cover:
+ * a worker that died mid-shard.
+ */
+@Service
+public class ShardService {
+    private static final Logger log = LoggerFactory.getLogger(ShardService.class);
+    private static final ObjectMapper M = new ObjectMapper();
+    // keeps a shard's semgrep command line well under ARG_MAX
+    private static final int MAX_TARGETS = 2000;
+
+    private final JdbcTemplate jdbc;
+    private final DataSource dataSource;
+    private final TransactionTemplate tx;
+    private final SemgrepBatcher semgrep;
+    private final WorkspaceManager workspaces;
+    private final FileClassifier classifier;
+    private final String semgrepScript;
+    private final long minFiles;
+    private final int filesPerShard;
+    private final int leaseSeconds;
+    private final int maxAttempts;
+    private final String workerId = ManagementFactory.getRuntimeMXBean().getName();
+    private final ScheduledExecutorService heartbeat = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "shard-lease");
+        t.setDaemon(true);
+        return t;
+    });
+    // coordinators in this process waiting for shards of their job to finish
+    private final Map<UUID, Semaphore> waiting = new ConcurrentHashMap<>();
+    private Thread doneListener;
+
+    public ShardService(JdbcTemplate jdbc, DataSource dataSource, TransactionTemplate tx, SemgrepBatcher semgrep,
+            WorkspaceManager workspaces, FileClassifier classifier,
+            @Value("${scanner.semgrep.script:${user.dir}/scanner-scripts/run-semgrep.sh}") String semgrepScript,
+            @Value("${scanner.shard.min-files:0}") long minFiles,
+            @Value("${scanner.shard.files-per-shard:25000}") int filesPerShard,
+            @Value("${scanner.shard.lease-seconds:3600}") int leaseSeconds,
+            @Value("${scanner.shard.max-attempts:3}") int maxAttempts) {
+        this.jdbc = jdbc;
+        this.dataSource = dataSource;
+        this.tx = tx;
+        this.semgrep = semgrep;
+        this.workspaces = workspaces;
+        this.classifier = classifier;
+        this.semgrepScript = semgrepScript;
+        this.minFiles = minFiles;
+        this.filesPerShard = filesPerShard;
+        this.leaseSeconds = leaseSeconds;
+        this.maxAttempts = maxAttempts;
+    }
+
+    private record Shard(UUID jobId, int shardNo, String repoUrl, String commit, String workspace, String config,
+            String language, List<String> targets) {
+    }
+
+    /** Whether a checkout of this many files is scanned in shards. */
+    public boolean shouldShard(long files) {
+        return minFiles > 0 && files >= minFiles;
+    }
+
+    /**
+     * Coordinator side: split the checkout into shards, help scan them until
+     * all are done, and return the merged Semgrep output.
+     */
+    public String scan(UUID jobId, String repoUrl, Path workspace, String config, String lang) throws Exception {
+        String commit = git(workspace, null, "rev-parse", "HEAD").trim();
+        List<List<String>> plan = plan(workspace, filesPerShard);
+        tx.executeWithoutResult(status -> {
+            for (int i = 0; i < plan.size(); i++) {
+                try {
+                    jdbc.update("INSERT INTO scan_shard (job_id, shard_no, status, repo_url, commit_sha, workspace, "
+                            + "config, language, targets) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?::jsonb)", jobId, i,
+                            ScanStatus.QUEUED.name(), repoUrl, commit, workspace.toString(), config, lang,
+                            M.writeValueAsString(plan.get(i)));
+                } catch (IOException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        });
+        log.info("[Shard] Job {} split into {} shards of up to {} files", jobId, plan.size(), filesPerShard);
+        Semaphore done = new Semaphore(0);
+        waiting.put(jobId, done);
+        try {
+            listenForDone();
+            announce(jobId, plan.size());
+            while (true) {
+                Optional<Shard> mine = claim(jobId);
+                if (mine.isPresent()) {
+                    execute(mine.get());
+                    continue;
+                }
+                Map<String, Integer> counts = new HashMap<>();
+                jdbc.query("SELECT status, count(*) FROM scan_shard WHERE job_id = ? GROUP BY status",
+                        rs -> {
+                            counts.put(rs.getString(1), rs.getInt(2));
+                        }, jobId);
+                if (counts.getOrDefault(ScanStatus.FAILED.name(), 0) > 0) {
+                    String error = jdbc.queryForObject("SELECT string_agg('shard ' || shard_no || ': ' "
+                            + "|| coalesce(error_message, ''), '; ') FROM scan_shard WHERE job_id = ? AND status = ?",
+                            String.class, jobId, ScanStatus.FAILED.name());
+                    throw new IllegalStateException("Shard scan failed: " + error);
+                }
+                if (counts.getOrDefault(ScanStatus.COMPLETED.name(), 0) == plan.size()) {
+                    break;
+                }
+                if (!done.tryAcquire(renewSeconds(), TimeUnit.SECONDS)) {
+                    requeueExpired();
+                }
+                done.drainPermits();
+            }
+            return reduce(jobId);
+        } finally {
+            waiting.remove(jobId);
+            // also stops workers from picking up the rest of a failed job
+            jdbc.update("DELETE FROM scan_shard WHERE job_id = ?", jobId);
+        }
+    }
+
+    /**
+     * Worker side: claim and scan one queued shard, of the announced job if it
+     * still has one, otherwise of any job. Returns false if there was nothing
+     * to claim.
+     */
+    public boolean runNext(UUID announced) {
+        requeueExpired();
+        Optional<Shard> shard = announced == null ? Optional.empty() : claim(announced);
+        if (shard.isEmpty()) {
+            shard = claim(null);
+        }
+        shard.ifPresent(this::execute);
+        return shard.isPresent();
+    }
+
+    private Optional<Shard> claim(UUID jobId) {
+        List<Shard> claimed = jdbc.query("UPDATE scan_shard s SET status = ?, attempts = s.attempts + 1, "
+                + "claimed_by = ?, claimed_at = now(), updated_at = now() FROM (SELECT job_id, shard_no FROM scan_shard "
+                + "WHERE status = ?" + (jobId == null ? "" : " AND job_id = ?")
+                + " ORDER BY created_at, shard_no LIMIT 1 FOR UPDATE SKIP LOCKED) c "
+                + "WHERE s.job_id = c.job_id AND s.shard_no = c.shard_no "
+                + "RETURNING s.job_id, s.shard_no, s.repo_url, s.commit_sha, s.workspace, s.config, s.language, "
+                + "s.targets::text", (rs, n) -> {
+                    try {
+                        return new Shard(rs.getObject(1, UUID.class), rs.getInt(2), rs.getString(3),
+                                rs.getString(4), rs.getString(5), rs.getString(6), rs.getString(7),
+                                M.readValue(rs.getString(8), new TypeReference<List<String>>() {
+                                }));
+                    } catch (IOException e) {
+                        throw new IllegalStateException(e);
+                    }
+                }, jobId == null
+                        ? new Object[] { ScanStatus.RUNNING.name(), workerId, ScanStatus.QUEUED.name() }
+                        : new Object[] { ScanStatus.RUNNING.name(), workerId, ScanStatus.QUEUED.name(), jobId });
+        return claimed.stream().findFirst();
+    }
+
+    private void execute(Shard shard) {
+        ScanTimer timer = new ScanTimer(shard.jobId(), shard.repoUrl());
+        Path coordinatorCheckout = Path.of(shard.workspace());
+        Path local = null;
+        ScheduledFuture<?> lease = heartbeat.scheduleAtFixedRate(() -> renew(shard), renewSeconds(), renewSeconds(),
+                TimeUnit.SECONDS);
+        try {
+            String out;
+            if (Files.isDirectory(coordinatorCheckout.resolve(".git"))) {
+                timer.begin("shard-semgrep");
+                out = semgrep.scanTargets(semgrepScript, shard.config(), shard.language(),
+                        resolve(coordinatorCheckout, shard.targets()));
+            } else {
+                timer.begin("shard-clone");
+                local = workspaces.allocate(shard.jobId() + "-shard-" + shard.shardNo());
+                sparseClone(shard, local);
+                // the coordinator pruned its checkout; the same policy gives the same files here
+                classifier.prune(local);
+                timer.workspace(workspaces.charge(local));
+                timer.begin("shard-semgrep");
+                out = rebase(semgrep.scanTargets(semgrepScript, shard.config(), shard.language(),
+                        resolve(local, shard.targets())), local, coordinatorCheckout);
+            }
+            timer.end();
+            int updated = jdbc.update("UPDATE scan_shard SET status = ?, semgrep_output = ?::jsonb, updated_at = now() "
+                    + "WHERE job_id = ? AND shard_no = ? AND status = ? AND claimed_by = ?",
+                    ScanStatus.COMPLETED.name(), out == null ? "{}" : out, shard.jobId(), shard.shardNo(),
+                    ScanStatus.RUNNING.name(), workerId);
+            log.info("[Shard] {} shard {} ({} targets) {}", shard.jobId(), shard.shardNo(), shard.targets().size(),
+                    updated > 0 ? "completed" : "no longer ours, result dropped");
+            if (updated > 0) {
+                finished(shard.jobId());
+            }
+        } catch (Exception e) {
+            timer.end();
+            log.warn("[Shard] {} shard {} failed: {}", shard.jobId(), shard.shardNo(), e.getMessage());
+            // retried until max-attempts, then the coordinator fails the job
+            int requeued = jdbc.update("UPDATE scan_shard SET status = ?, error_message = ?, claimed_by = NULL, "
+                    + "updated_at = now() WHERE job_id = ? AND shard_no = ? AND status = ? AND claimed_by = ? "
+                    + "AND attempts < ?", ScanStatus.QUEUED.name(), e.getMessage(), shard.jobId(), shard.shardNo(),
+                    ScanStatus.RUNNING.name(), workerId, maxAttempts);
+            if (requeued > 0) {
+                announce(shard.jobId(), 1);
+            } else if (jdbc.update("UPDATE scan_shard SET status = ?, error_message = ?, updated_at = now() "
+                    + "WHERE job_id = ? AND shard_no = ? AND status = ? AND claimed_by = ?",
+                    ScanStatus.FAILED.name(), e.getMessage(), shard.jobId(), shard.shardNo(),
+                    ScanStatus.RUNNING.name(), workerId) > 0) {
+                finished(shard.jobId());
+            }
+        } finally {
+            lease.cancel(false);
+            if (local != null) {
+                workspaces.release(local);
+            }
+        }
+    }
+
+    /** Extend the lease on a shard this worker is scanning. */
+    private void renew(Shard shard) {
+        try {
+            jdbc.update("UPDATE scan_shard SET claimed_at = now() "
+                    + "WHERE job_id = ? AND shard_no = ? AND status = ? AND claimed_by = ?",
+                    shard.jobId(), shard.shardNo(), ScanStatus.RUNNING.name(), workerId);
+        } catch (Exception e) {
+            log.warn("[Shard] Could not renew the lease on {} shard {}: {}", shard.jobId(), shard.shardNo(),
+                    e.getMessage());
+        }
+    }
+
+    /** Give shards of any job whose worker went silent back to the queue, or fail them once out of attempts. */
+    private void requeueExpired() {
+        List<UUID> failed = jdbc.queryForList("UPDATE scan_shard SET status = ?, error_message = 'lease expired', "
+                + "updated_at = now() WHERE status = ? AND claimed_at < now() - make_interval(secs => ?) "
+                + "AND attempts >= ? RETURNING job_id", UUID.class,
+                ScanStatus.FAILED.name(), ScanStatus.RUNNING.name(), leaseSeconds, maxAttempts);
+        List<UUID> requeued = jdbc.queryForList("UPDATE scan_shard SET status = ?, claimed_by = NULL, "
+                + "updated_at = now() WHERE status = ? AND claimed_at < now() - make_interval(secs => ?) "
+                + "RETURNING job_id", UUID.class,
+                ScanStatus.QUEUED.name(), ScanStatus.RUNNING.name(), leaseSeconds);
+        if (!failed.isEmpty() || !requeued.isEmpty()) {
+            log.warn("[Shard] {} expired shard leases requeued, {} failed", requeued.size(), failed.size());
+            for (UUID jobId : requeued) {
+                announce(jobId, 1);
+            }
+            failed.stream().distinct().forEach(this::finished);
+        }
+    }
+
+    private long renewSeconds() {
+        return Math.max(1, leaseSeconds / 3);
+    }
+
+    /** One notification per shard, so as many idle workers wake up. */
+    private void announce(UUID jobId, int shards) {
+        for (int i = 0; i < shards; i++) {
+            jdbc.queryForList("SELECT pg_notify('scan_shards', ?)", jobId.toString());
+        }
+    }
+
+    /** Wake the job's coordinator: one of its shards completed or failed. */
+    private void finished(UUID jobId) {
+        jdbc.queryForList("SELECT pg_notify('scan_shard_done', ?)", jobId.toString());
+    }
+
+    /**
+     * LISTEN on scan_shard_done for the coordinators of this process. The
+     * LISTEN is issued before returning, so the caller misses no completion.
+     */
+    private synchronized void listenForDone() throws SQLException {
+        if (doneListener != null) {
+            return;
+        }
+        Connection conn = listen();
+        doneListener = new Thread(() -> forwardDone(conn), "shard-done");
+        doneListener.setDaemon(true);
+        doneListener.start();
+    }
+
+    private Connection listen() throws SQLException {
+        Connection conn = dataSource.getConnection();
+        try (Statement st = conn.createStatement()) {
+            conn.setAutoCommit(true);
+            st.execute("LISTEN scan_shard_done");
+            return conn;
+        } catch (SQLException e) {
+            conn.close();
+            throw e;
+        }
+    }
+
+    private void forwardDone(Connection conn) {
+        while (true) {
+            try {
+                PGNotification[] notifications = conn.unwrap(PGConnection.class).getNotifications(0);
+                for (PGNotification n : notifications == null ? new PGNotification[0] : notifications) {
+                    Semaphore done = waiting.get(UUID.fromString(n.getParameter()));
+                    if (done != null) {
+                        done.release();
+                    }
+                }
+            } catch (Exception e) {
+                log.warn("[Shard] Lost the scan_shard_done listener, reconnecting: {}", e.getMessage());
+                try {
+                    conn.close();
+                } catch (SQLException ignored) {
+                    // already broken
+                }
+                conn = null;
+                while (conn == null) {
+                    try {
+                        Thread.sleep(1000);
+                        conn = listen();
+                    } catch (InterruptedException ie) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    } catch (SQLException retry) {
+                        log.debug("[Shard] Reconnect failed: {}", retry.getMessage());
+                    }
+                }
+                // completions sent while disconnected were missed; every coordinator recounts
+                waiting.values().forEach(Semaphore::release);
+            }
+        }
+    }
+
+    /**
+     * Concatenate the results and errors of all shards. Shards are read and
+     * parsed one at a time and their results written straight into the merged
+     * document; only their errors are held until the end. The merged document
+     * itself is one string, as the job stores its Semgrep output.
+     */
+    private String reduce(UUID jobId) throws IOException {
+        List<Integer> shardNos = jdbc.queryForList(
+                "SELECT shard_no FROM scan_shard WHERE job_id = ? ORDER BY shard_no", Integer.class, jobId);
+        StringWriter merged = new StringWriter();
+        List<JsonNode> errors = new ArrayList<>();
+        String version = null;
+        try (JsonGenerator g = M.getFactory().createGenerator(merged)) {
+            g.writeStartObject();
+            g.writeArrayFieldStart("results");
+            for (int shardNo : shardNos) {
+                String out = jdbc.queryForObject(
+                        "SELECT semgrep_output::text FROM scan_shard WHERE job_id = ? AND shard_no = ?",
+                        String.class, jobId, shardNo);
+                JsonNode node = out == null ? M.createObjectNode() : M.readTree(out);
+                for (JsonNode item : node.path("results")) {
+                    g.writeTree(item);
+                }
+                node.path("errors").forEach(errors::add);
+                if (version == null && node.hasNonNull("version")) {
+                    version = node.get("version").asText();
+                }
+            }
+            g.writeEndArray();
+            g.writeArrayFieldStart("errors");
+            for (JsonNode item : errors) {
+                g.writeTree(item);
+            }
+            g.writeEndArray();
+            if (version != null) {
+                g.writeStringField("version", version);
+            }
+            g.writeEndObject();
+        }
+        log.info("[Shard] Job {}: reduced {} shards", jobId, shardNos.size());
+        return merged.toString();
+    }
+
+    /**
+     * Split a checkout into shards of at most {@code perShard} files (and
+     * {@link #MAX_TARGETS} targets). Each shard is a list of paths relative to
+     * the checkout root.
+     */
+    static List<List<String>> plan(Path root, int perShard) throws IOException {
+        Map<Path, Long> subtree = new HashMap<>();
+        Map<Path, List<Path>> children = new HashMap<>();
+        Deque<long[]> open = new ArrayDeque<>();
+        Files.walkFileTree(root, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                if (!dir.equals(root) && ".git".equals(dir.getFileName().toString())) {
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                if (!dir.equals(root)) {
+                    children.computeIfAbsent(dir.getParent(), k -> new ArrayList<>()).add(dir);
+                }
+                open.push(new long[1]);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                if (attrs.isRegularFile()) {
+                    open.peek()[0]++;
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException exc) {
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException exc) {
+                long n = open.pop()[0];
+                subtree.put(dir, n);
+                if (!open.isEmpty()) {
+                    open.peek()[0] += n;
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+
+        // directories that fit stay whole; larger ones (and the root) are split into files and subdirectories
+        record Unit(String path, long files) {
+        }
+        List<Unit> units = new ArrayList<>();
+        Deque<Path> todo = new ArrayDeque<>();
+        todo.push(root);
+        while (!todo.isEmpty()) {
+            Path dir = todo.pop();
+            long n = subtree.getOrDefault(dir, 0L);
+            if (n == 0) {
+                continue;
+            }
+            if (n <= perShard && !dir.equals(root)) {
+                units.add(new Unit(relative(root, dir), n));
+                continue;
+            }
+            try (Stream<Path> entries = Files.list(dir)) {
+                entries.filter(f -> Files.isRegularFile(f, LinkOption.NOFOLLOW_LINKS))
+                        .forEach(f -> units.add(new Unit(relative(root, f), 1)));
+            }
+            children.getOrDefault(dir, List.of()).forEach(todo::push);
+        }
+
+        // first-fit decreasing
+        units.sort(Comparator.comparingLong(Unit::files).reversed().thenComparing(Unit::path));
+        List<List<String>> shards = new ArrayList<>();
+        List<long[]> loads = new ArrayList<>();
+        for (Unit u : units) {
+            int bin = -1;
+            for (int i = 0; i < shards.size(); i++) {
+                if (loads.get(i)[0] + u.files() <= perShard && shards.get(i).size() < MAX_TARGETS) {
+                    bin = i;
+                    break;
+                }
+            }
+            if (bin < 0) {
+                shards.add(new ArrayList<>());
+                loads.add(new long[1]);
+                bin = shards.size() - 1;
+            }
+            shards.get(bin).add(u.path());
+            loads.get(bin)[0] += u.files();
+        }
+        return shards;
+    }
+
+    /** Blobless clone of the shard's commit with only its paths checked out. */
+    private void sparseClone(Shard shard, Path dir) throws Exception {
+        git(null, null, "clone", "--filter=blob:none", "--no-checkout", "--depth", "1", shard.repoUrl(),
+                dir.toString());
+        git(dir, null, "fetch", "--depth", "1", "--filter=blob:none", "origin", shard.commit());
+        // anchored gitignore-style patterns; one matching a directory takes its whole subtree
+        // .gitattributes at any depth, so file classification sees the same attributes
+        StringBuilder patterns = new StringBuilder(".gitattributes\n");
+        for (String target : shard.targets()) {
+            patterns.append('/').append(target.replaceAll("([\\\\*?\\[!#])", "\\\\$1")).append('\n');
+        }
+        git(dir, patterns.toString(), "sparse-checkout", "set", "--no-cone", "--stdin");
+        git(dir, null, "checkout", "--detach", shard.commit());
+    }
+
+    private static List<Path> resolve(Path root, List<String> targets) {
+        List<Path> paths = new ArrayList<>(targets.size());
+        for (String t : targets) {
+            paths.add(root.resolve(t));
+        }
+        return paths;
+    }
+
+    /** Rewrite result and error paths from one checkout to another. */
+    static String rebase(String semgrepJson, Path from, Path to) throws IOException {
+        if (semgrepJson == null) {
+            return null;
+        }
+        String fromPrefix = from.toString().endsWith("/") ? from.toString() : from + "/";
+        String toPrefix = to.toString().endsWith("/") ? to.toString() : to + "/";
+        JsonNode root = M.readTree(semgrepJson);
+        for (String field : new String[] { "results", "errors" }) {
+            for (JsonNode item : root.path(field)) {
+                String path = item.path("path").asText("");
+                if (item instanceof ObjectNode o && path.startsWith(fromPrefix)) {
+                    o.put("path", toPrefix + path.substring(fromPrefix.length()));
+                }
+            }
+        }
+        if (root instanceof ObjectNode o) {
+            o.remove("paths");
+        }
+        return root.toString();
+    }
+
+    private static String relative(Path root, Path p) {
+        return root.relativize(p).toString().replace('\\', '/');
+    }
+
+    /** Run git, optionally feeding {@code stdin}; returns its output. */
+    private static String git(Path dir, String stdin, String... args) throws Exception {
+        List<String> cmd = new ArrayList<>();
+        cmd.add("git");
+        if (dir != null) {
+            cmd.add("-C");
+            cmd.add(dir.toString());
+        }
+        cmd.addAll(List.of(args));
+        ProcessBuilder pb = new ProcessBuilder(cmd);
+        pb.redirectErrorStream(true);
+        Process p = pb.start();
+        try (OutputStream in = p.getOutputStream()) {
+            if (stdin != null) {
+                in.write(stdin.getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        StringBuilder out = new StringBuilder();
+        try (BufferedReader br = new BufferedReader(new InputStreamReader(p.getInputStream()))) {
+            String line;
+            while ((line = br.readLine()) != null) {
+                out.append(line).append('\n');
+            }
+        }
+        if (p.waitFor() != 0) {
+            throw new RuntimeException("Command failed: " + String.join(" ", cmd) + "\n" + out);
+        }
+        return out.toString();
+    }
+}
@@ -0,0 +1,308 @@
+package com.cbom.scan.service;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Allocates scan workspaces and keeps this process's disk usage under
+ * {@code scanner.workspace.quota-mb}: each allocation reserves
+ * {@code scanner.workspace.reserve-mb} up front (corrected to the measured
+ * size by {@link #charge}) and blocks while the reservation does not fit.
+ * Released workspaces are renamed out of the way and deleted by a background
+ * reaper, so callers never wait on a recursive delete.
+ *
+ * Each process works in its own {@code instance-*} directory under
+ * {@code scanner.workspace.root}, holding a file lock on it for its lifetime.
+ * At startup only instance directories whose lock is free (their process is
+ * gone) are swept, so processes sharing a root, or a shared workspace volume,
+ * never delete each other's checkouts.
+ */
+@Component
+public class WorkspaceManager {
+    private static final Logger log = LoggerFactory.getLogger(WorkspaceManager.class);
+    private static final String PREFIX = "scan-";
+    private static final String TRASH_PREFIX = ".trash-";
+    private static final String INSTANCE_PREFIX = "instance-";
+    private static final String LOCK_FILE = ".lock";
+
+    private final Path root;
+    private final Path instance;
+    private final long quotaBytes;
+    private final long reserveBytes;
+    private FileChannel lockChannel;
+    private FileLock instanceLock;
+    private final Map<Path, Long> charged = new ConcurrentHashMap<>();
+    private final AtomicInteger trashSeq = new AtomicInteger();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition freed = lock.newCondition();
+    private long usedBytes;
+
+    private final ExecutorService reaper = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "workspace-reaper");
+        t.setDaemon(true);
+        return t;
+    });
+
+    public WorkspaceManager(@Value("${scanner.workspace.root:${java.io.tmpdir}/cbom-workspaces}") String root,
+            @Value("${scanner.workspace.quota-mb:20480}") long quotaMb,
+            @Value("${scanner.workspace.reserve-mb:512}") long reserveMb) {
+        this.root = Path.of(root).toAbsolutePath();
+        this.instance = this.root.resolve(INSTANCE_PREFIX + UUID.randomUUID().toString().substring(0, 8));
+        this.quotaBytes = quotaMb * 1024 * 1024;
+        this.reserveBytes = reserveMb * 1024 * 1024;
+    }
+
+    /** Source files (outside .git) and total bytes on disk of a workspace. */
+    public record Usage(long files, long bytes) {
+    }
+
+    @PostConstruct
+    void start() throws IOException {
+        Files.createDirectories(instance);
+        lockChannel = FileChannel.open(instance.resolve(LOCK_FILE), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE);
+        instanceLock = lockChannel.lock();
+        sweepOrphans();
+    }
+
+    /** Remove the instance directories of processes that are gone, and their unfinished trash. */
+    private void sweepOrphans() {
+        int swept = 0;
+        try (DirectoryStream<Path> children = Files.newDirectoryStream(root)) {
+            for (Path child : children) {
+                String name = child.getFileName().toString();
+                try {
+                    if (name.startsWith(TRASH_PREFIX)) {
+                        reaper.execute(() -> deleteTree(child));
+                        swept++;
+                    } else if (name.startsWith(INSTANCE_PREFIX) && !child.equals(instance) && sweepIfDead(child)) {
+                        swept++;
+                    } else if (name.startsWith(PREFIX)) {
+                        log.warn("[Workspace] Leaving {}: not owned by an instance directory, remove it by hand",
+                                child);
+                    }
+                } catch (Exception e) {
+                    log.warn("[Workspace] Could not sweep {}: {}", child, e.getMessage());
+                }
+            }
+        } catch (IOException e) {
+            log.warn("[Workspace] Could not list {}: {}", root, e.getMessage());
+        }
+        if (swept > 0) {
+            log.info("[Workspace] Sweeping {} orphaned entries under {}", swept, root);
+        }
+    }
+
+    /** Move a dead instance's directory to the reaper; false if its owner still holds the lock. */
+    private boolean sweepIfDead(Path dir) throws IOException {
+        try (FileChannel ch = FileChannel.open(dir.resolve(LOCK_FILE), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE); FileLock lock = ch.tryLock()) {
+            if (lock == null) {
+                return false;
+            }
+            // renamed while still locked, so no other sweeper can claim it in between
+            Path trash = root.resolve(TRASH_PREFIX + dir.getFileName() + "-" + trashSeq.incrementAndGet());
+            Files.move(dir, trash, StandardCopyOption.ATOMIC_MOVE);
+            reaper.execute(() -> deleteTree(trash));
+            return true;
+        } catch (OverlappingFileLockException e) {
+            return false; // held by this JVM
+        }
+    }
+
+    /**
+     * Create an empty workspace directory and reserve its estimated size,
+     * blocking while the reservation does not fit in the quota next to live
+     * or not-yet-reaped workspaces. With nothing in use, a workspace is
+     * always admitted, so a quota smaller than the estimate cannot deadlock.
+     */
+    public Path allocate(String name) throws IOException, InterruptedException {
+        lock.lock();
+        try {
+            while (usedBytes > 0 && usedBytes + reserveBytes > quotaBytes) {
+                log.info("[Workspace] Quota of {} MB reached, waiting for space", quotaBytes / (1024 * 1024));
+                freed.await();
+            }
+            usedBytes += reserveBytes;
+        } finally {
+            lock.unlock();
+        }
+        Path workspace = instance.resolve(PREFIX + name);
+        try {
+            Files.createDirectory(workspace);
+        } catch (IOException e) {
+            adjust(-reserveBytes);
+            throw e;
+        }
+        charged.put(workspace, reserveBytes);
+        return workspace;
+    }
+
+    /**
+     * Measure a populated workspace and count its size against the quota,
+     * replacing the reservation made by {@link #allocate} or a previous
+     * charge.
+     */
+    public Usage charge(Path workspace) {
+        Usage usage = measure(workspace);
+        Long previous = charged.put(workspace, usage.bytes());
+        adjust(usage.bytes() - (previous == null ? 0 : previous));
+        return usage;
+    }
+
+    /**
+     * Take files deleted from a charged workspace off its charge without
+     * measuring it again. Returns what is left.
+     */
+    public Usage credit(Path workspace, Usage charge, long files, long bytes) {
+        long freedBytes = Math.min(bytes, charge.bytes());
+        charged.computeIfPresent(workspace, (w, b) -> b - freedBytes);
+        adjust(-freedBytes);
+        return new Usage(Math.max(0, charge.files() - files), charge.bytes() - freedBytes);
+    }
+
+    /**
+     * Hand a workspace to the reaper. The directory is renamed immediately so
+     * the name can be reused; its charge is returned once it is deleted.
+     */
+    public void release(Path workspace) {
+        Long bytes = charged.remove(workspace);
+        long size = bytes == null ? 0 : bytes;
+        Path trash;
+        try {
+            trash = moveToTrash(workspace);
+        } catch (IOException e) {
+            log.warn("[Workspace] Could not rename {} for deletion: {}", workspace, e.getMessage());
+            trash = workspace;
+        }
+        Path target = trash;
+        reaper.execute(() -> {
+            deleteTree(target);
+            adjust(-size);
+        });
+    }
+
+    private void adjust(long delta) {
+        lock.lock();
+        try {
+            usedBytes = Math.max(0, usedBytes + delta);
+            if (delta < 0) {
+                freed.signalAll();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private Path moveToTrash(Path dir) throws IOException {
+        Path trash = instance.resolve(TRASH_PREFIX + dir.getFileName() + "-" + trashSeq.incrementAndGet());
+        return Files.move(dir, trash, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    static Usage measure(Path workspace) {
+        long[] totals = new long[2];
+        try {
+            Files.walkFileTree(workspace, new SimpleFileVisitor<>() {
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                    if (attrs.isRegularFile()) {
+                        if (!workspace.relativize(file).startsWith(".git")) {
+                            totals[0]++;
+                        }
+                        totals[1] += attrs.size();
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException exc) {
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException e) {
+            log.warn("[Workspace] Failed to measure {}: {}", workspace, e.getMessage());
+        }
+        return new Usage(totals[0], totals[1]);
+    }
+
+    private static void deleteTree(Path dir) {
+        int[] failures = new int[1];
+        try {
+            Files.walkFileTree(dir, new SimpleFileVisitor<>() {
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                    delete(file);
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException exc) {
+                    delete(file);
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult postVisitDirectory(Path d, IOException exc) {
+                    delete(d);
+                    return FileVisitResult.CONTINUE;
+                }
+
+                private void delete(Path p) {
+                    try {
+                        Files.deleteIfExists(p);
+                    } catch (IOException e) {
+                        failures[0]++;
+                    }
+                }
+            });
+        } catch (IOException e) {
+            failures[0]++;
+        }
+        if (failures[0] > 0) {
+            log.warn("[Workspace] {} entries could not be deleted under {}", failures[0], dir);
+        } else {
+            log.info("Deleted workspace: {}", dir);
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        reaper.shutdown();
+        try {
+            if (instanceLock != null) {
+                instanceLock.release();
+            }
+            if (lockChannel != null) {
+                lockChannel.close();
+            }
+        } catch (IOException e) {
+            log.warn("[Workspace] Could not release {}: {}", instance, e.getMessage());
+        }
+    }
+}
@@ -3,16 +3,20 @@ package com.cbom.scan.worker;
 import java.sql.Connection;
 import java.sql.Statement;
 import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import javax.sql.DataSource;
 
 import org.postgresql.PGConnection;
 import org.postgresql.PGNotification;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.cbom.scan.service.ScannerService;
+import com.cbom.scan.service.ShardService;
 import jakarta.annotation.PostConstruct;
 
 @Component
@@ -21,10 +25,16 @@ public class PostgresListener {
 
     private final DataSource dataSource;
     private final ScannerService scannerService;
+    private final ShardService shardService;
+    // Jobs run concurrently so that small ones can share a Semgrep batch
+    private final ExecutorService jobs;
 
-    public PostgresListener(DataSource dataSource, ScannerService scannerService) {
+    public PostgresListener(DataSource dataSource, ScannerService scannerService, ShardService shardService,
+            @Value("${scanner.worker.concurrency:8}") int concurrency) {
         this.dataSource = dataSource;
         this.scannerService = scannerService;
+        this.shardService = shardService;
+        this.jobs = Executors.newFixedThreadPool(concurrency);
     }
 
     // @PostConstruct
@@ -37,16 +47,34 @@ public class PostgresListener {
                 Statement st = conn.createStatement()) {
             conn.setAutoCommit(true);
             st.execute("LISTEN scan_jobs");
+            st.execute("LISTEN scan_shards");
             PGConnection pg = conn.unwrap(PGConnection.class);
-            log.info("[Worker] Listening on channel 'scan_jobs'...");
+            log.info("[Worker] Listening on channels 'scan_jobs' and 'scan_shards'...");
             while (true) {
                 PGNotification[] notifications = pg.getNotifications(5000);
                 if (notifications != null) {
                     for (PGNotification n : notifications) {
+                        if ("scan_shards".equals(n.getName())) {
+                            // one notification per shard, carrying its job id; whoever claims first scans it
+                            jobs.execute(() -> {
+                                try {
+                                    shardService.runNext(UUID.fromString(n.getParameter()));
+                                } catch (Exception ex) {
+                                    ex.printStackTrace();
+                                }
+                            });
+                            continue;
+                        }
                         try {
                             UUID jobId = UUID.fromString(n.getParameter());
                             log.info("[Worker] Received job: {}", jobId);
-                            scannerService.run(jobId);
+                            jobs.execute(() -> {
+                                try {
+                                    scannerService.run(jobId);
+                                } catch (Exception ex) {
+                                    ex.printStackTrace();
+                                }
+                            });
                         } catch (Exception ex) {
                             ex.printStackTrace();
                         }
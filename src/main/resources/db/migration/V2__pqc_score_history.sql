@@ -0,0 +1,25 @@
+-- One row per completed scan; compact, no JSON
+CREATE TABLE IF NOT EXISTS pqc_score_history (
+  repo_url TEXT NOT NULL,
+  scored_at TIMESTAMPTZ NOT NULL DEFAULT now(),
+  scan_id UUID NOT NULL,
+  score SMALLINT NOT NULL,
+  findings INT NOT NULL,
+  quantum_vulnerable INT NOT NULL,
+  PRIMARY KEY (repo_url, scored_at, scan_id)
+);
+
+-- Daily rollup per repo, maintained on insert; dashboards read only this
+CREATE TABLE IF NOT EXISTS pqc_score_daily (
+  repo_url TEXT NOT NULL,
+  day DATE NOT NULL,
+  scans INT NOT NULL,
+  score_sum BIGINT NOT NULL,
+  score_min SMALLINT NOT NULL,
+  score_max SMALLINT NOT NULL,
+  last_score SMALLINT NOT NULL,
+  last_scored_at TIMESTAMPTZ NOT NULL,
+  PRIMARY KEY (repo_url, day)
+);
+
+CREATE INDEX IF NOT EXISTS idx_pqc_score_daily_day ON pqc_score_daily (day);
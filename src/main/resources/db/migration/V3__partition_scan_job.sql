@@ -0,0 +1,62 @@
+-- Move scan_job to monthly range partitions on created_at.
+-- Partitions are named scan_job_YYYY_MM; RetentionService creates upcoming months and
+-- archives/drops expired ones. Rows outside any month partition land in scan_job_default.
+
+-- column mapped by ScanJob but missing from V1
+ALTER TABLE scan_job ADD COLUMN IF NOT EXISTS detected_language TEXT;
+
+ALTER TABLE scan_job RENAME TO scan_job_unpartitioned;
+ALTER TABLE scan_job_unpartitioned RENAME CONSTRAINT scan_job_pkey TO scan_job_unpartitioned_pkey;
+DROP INDEX IF EXISTS idx_scan_job_semgrep;
+DROP INDEX IF EXISTS idx_scan_job_cbom;
+
+CREATE TABLE scan_job (
+  id UUID NOT NULL,
+  repo_url TEXT NOT NULL,
+  ref TEXT,
+  tool TEXT NOT NULL CHECK (tool IN ('semgrep','cbomkit','both')),
+  status TEXT NOT NULL CHECK (status IN ('QUEUED','RUNNING','COMPLETED','FAILED')),
+  created_at TIMESTAMPTZ NOT NULL DEFAULT now(),
+  updated_at TIMESTAMPTZ DEFAULT now(),
+  semgrep_output JSONB,
+  cbomkit_output JSONB,
+  pqc_score INT,
+  error_message TEXT,
+  detected_language TEXT,
+  PRIMARY KEY (id, created_at)
+) PARTITION BY RANGE (created_at);
+
+CREATE INDEX IF NOT EXISTS idx_scan_job_semgrep ON scan_job USING GIN (semgrep_output);
+CREATE INDEX IF NOT EXISTS idx_scan_job_cbom ON scan_job USING GIN (cbomkit_output);
+
+CREATE TABLE IF NOT EXISTS scan_job_default PARTITION OF scan_job DEFAULT;
+
+CREATE OR REPLACE FUNCTION ensure_scan_job_partition(month DATE) RETURNS void AS $$
+DECLARE
+  start_at DATE := date_trunc('month', month)::date;
+BEGIN
+  EXECUTE format('CREATE TABLE IF NOT EXISTS %I PARTITION OF scan_job FOR VALUES FROM (%L) TO (%L)',
+                 'scan_job_' || to_char(start_at, 'YYYY_MM'), start_at, (start_at + interval '1 month')::date);
+END
+$$ LANGUAGE plpgsql;
+
+DO $$
+DECLARE
+  m DATE;
+BEGIN
+  FOR m IN SELECT DISTINCT date_trunc('month', coalesce(created_at, now()))::date FROM scan_job_unpartitioned LOOP
+    PERFORM ensure_scan_job_partition(m);
+  END LOOP;
+  FOR i IN 0..2 LOOP
+    PERFORM ensure_scan_job_partition((date_trunc('month', now()) + i * interval '1 month')::date);
+  END LOOP;
+END
+$$;
+
+INSERT INTO scan_job (id, repo_url, ref, tool, status, created_at, updated_at, semgrep_output, cbomkit_output,
+                      pqc_score, error_message, detected_language)
+SELECT id, repo_url, ref, tool, status, coalesce(created_at, now()), updated_at, semgrep_output, cbomkit_output,
+       pqc_score, error_message, detected_language
+FROM scan_job_unpartitioned;
+
+DROP TABLE scan_job_unpartitioned;
@@ -0,0 +1,2 @@
+-- Per-job phase timings and sizes, written with the final status (see ScanTimer)
+ALTER TABLE scan_job ADD COLUMN IF NOT EXISTS scan_metrics JSONB;
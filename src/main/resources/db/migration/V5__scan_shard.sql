@@ -0,0 +1,22 @@
+-- Shards of a map-reduce scan (see ShardService); rows live only while their job runs
+CREATE TABLE IF NOT EXISTS scan_shard (
+  job_id UUID NOT NULL,
+  shard_no INT NOT NULL,
+  status TEXT NOT NULL,
+  repo_url TEXT NOT NULL,
+  commit_sha TEXT NOT NULL,
+  workspace TEXT NOT NULL,
+  config TEXT NOT NULL,
+  language TEXT NOT NULL,
+  targets JSONB NOT NULL,
+  attempts INT NOT NULL DEFAULT 0,
+  claimed_by TEXT,
+  claimed_at TIMESTAMPTZ,
+  semgrep_output JSONB,
+  error_message TEXT,
+  created_at TIMESTAMPTZ NOT NULL DEFAULT now(),
+  updated_at TIMESTAMPTZ NOT NULL DEFAULT now(),
+  PRIMARY KEY (job_id, shard_no)
+);
+
+CREATE INDEX IF NOT EXISTS idx_scan_shard_queued ON scan_shard (created_at, shard_no) WHERE status = 'QUEUED';
@@ -0,0 +1,9 @@
+-- Content digests of the served documents, written with the results so
+-- revalidations (If-None-Match) never touch the documents themselves
+ALTER TABLE scan_job ADD COLUMN IF NOT EXISTS cbom_etag TEXT;
+ALTER TABLE scan_job ADD COLUMN IF NOT EXISTS merged_etag TEXT;
+
+-- rows saved before this migration: digest of what they serve today
+UPDATE scan_job SET cbom_etag = md5(cbomkit_output::text) WHERE cbomkit_output IS NOT NULL AND cbom_etag IS NULL;
+UPDATE scan_job SET merged_etag = md5(coalesce(semgrep_output::text, '') || '|' || coalesce(cbomkit_output::text, '')
+    || '|' || coalesce(pqc_score::text, '')) WHERE status IN ('COMPLETED', 'FAILED') AND merged_etag IS NULL;
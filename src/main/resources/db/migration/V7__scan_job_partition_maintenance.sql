@@ -0,0 +1,48 @@
+-- Partition maintenance fixes for scan_job (see V3).
+--
+-- ensure_scan_job_partition: CREATE TABLE ... PARTITION OF fails when the default partition
+-- already holds rows for that month. Such rows are now moved into a standalone table that is
+-- then attached as the month's partition. Calls are serialised per partition name.
+--
+-- The default partition is dropped: DETACH PARTITION ... CONCURRENTLY, which RetentionService
+-- uses so dropping an old month does not take ACCESS EXCLUSIVE on scan_job, is not allowed
+-- while one exists. Its rows move to their month partitions first. Upcoming months are created
+-- ahead of time (scanner.retention.ahead-months), so inserts always have a partition.
+
+CREATE OR REPLACE FUNCTION ensure_scan_job_partition(month DATE) RETURNS void AS $$
+DECLARE
+  start_at DATE := date_trunc('month', month)::date;
+  end_at DATE := (date_trunc('month', month) + interval '1 month')::date;
+  part TEXT := 'scan_job_' || to_char(date_trunc('month', month), 'YYYY_MM');
+BEGIN
+  PERFORM pg_advisory_xact_lock(hashtext(part));
+  IF to_regclass(part) IS NOT NULL THEN
+    RETURN;
+  END IF;
+  IF to_regclass('scan_job_default') IS NULL THEN
+    EXECUTE format('CREATE TABLE %I PARTITION OF scan_job FOR VALUES FROM (%L) TO (%L)', part, start_at, end_at);
+    RETURN;
+  END IF;
+  EXECUTE format('CREATE TABLE %I (LIKE scan_job INCLUDING DEFAULTS INCLUDING CONSTRAINTS)', part);
+  EXECUTE format('WITH moved AS (DELETE FROM scan_job_default WHERE created_at >= %L AND created_at < %L RETURNING *) '
+                 'INSERT INTO %I SELECT * FROM moved', start_at, end_at, part);
+  EXECUTE format('ALTER TABLE scan_job ATTACH PARTITION %I FOR VALUES FROM (%L) TO (%L)', part, start_at, end_at);
+END
+$$ LANGUAGE plpgsql;
+
+DO $$
+DECLARE
+  m DATE;
+BEGIN
+  IF to_regclass('scan_job_default') IS NULL THEN
+    RETURN;
+  END IF;
+  FOR m IN SELECT DISTINCT date_trunc('month', created_at)::date FROM scan_job_default LOOP
+    PERFORM ensure_scan_job_partition(m);
+  END LOOP;
+  IF EXISTS (SELECT 1 FROM scan_job_default) THEN
+    RAISE EXCEPTION 'scan_job_default still has rows';
+  END IF;
+  DROP TABLE scan_job_default;
+END
+$$;
@@ -0,0 +1,4 @@
+-- Jobs that failed with an exception were marked FAILED without a merged_etag and answered
+-- 204 on /json; their merged document is {"pqc_score":0}. Same digest as V6.
+UPDATE scan_job SET merged_etag = md5(coalesce(semgrep_output::text, '') || '|' || coalesce(cbomkit_output::text, '')
+    || '|' || coalesce(pqc_score::text, '')) WHERE status IN ('COMPLETED', 'FAILED') AND merged_etag IS NULL;
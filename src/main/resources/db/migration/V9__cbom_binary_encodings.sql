@@ -0,0 +1,6 @@
+-- Binary encodings of the CBOM, written by CbomBuilder from the same document as cbomkit_output
+-- and served as stored (see ReportService.Encoding). Rows saved before this have only the JSON;
+-- their binary encodings are written from it when requested.
+ALTER TABLE scan_job ADD COLUMN IF NOT EXISTS cbom_smile BYTEA;
+ALTER TABLE scan_job ADD COLUMN IF NOT EXISTS cbom_cbor BYTEA;
+ALTER TABLE scan_job ADD COLUMN IF NOT EXISTS cbom_protobuf BYTEA;
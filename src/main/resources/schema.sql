@@ -1,18 +1,104 @@
 CREATE EXTENSION IF NOT EXISTS "uuid-ossp";
 
+-- Monthly range partitions on created_at (scan_job_YYYY_MM), maintained by RetentionService.
+-- Ids are UUIDv7 whose timestamp is created_at (see ScanIds), so lookups by id prune partitions.
 CREATE TABLE IF NOT EXISTS scan_job (
-  id UUID PRIMARY KEY DEFAULT uuid_generate_v4(),
+  id UUID NOT NULL DEFAULT uuid_generate_v4(),
   repo_url TEXT NOT NULL,
   ref TEXT,
   tool TEXT NOT NULL CHECK (tool IN ('semgrep','cbomkit','both')),
   status TEXT NOT NULL CHECK (status IN ('QUEUED','RUNNING','COMPLETED','FAILED')),
-  created_at TIMESTAMPTZ DEFAULT now(),
+  created_at TIMESTAMPTZ NOT NULL DEFAULT now(),
   updated_at TIMESTAMPTZ DEFAULT now(),
   semgrep_output JSONB,
   cbomkit_output JSONB,
   pqc_score INT,
-  error_message TEXT
-);
+  error_message TEXT,
+  detected_language TEXT,
+  scan_metrics JSONB,
+  cbom_etag TEXT,
+  merged_etag TEXT,
+  -- the CBOM as Smile, CBOR and CycloneDX protobuf, written with cbomkit_output (see ReportService.Encoding)
+  cbom_smile BYTEA,
+  cbom_cbor BYTEA,
+  cbom_protobuf BYTEA,
+  PRIMARY KEY (id, created_at)
+) PARTITION BY RANGE (created_at);
 
 CREATE INDEX IF NOT EXISTS idx_scan_job_semgrep ON scan_job USING GIN (semgrep_output);
 CREATE INDEX IF NOT EXISTS idx_scan_job_cbom ON scan_job USING GIN (cbomkit_output);
+
+-- No default partition: DETACH PARTITION ... CONCURRENTLY is not allowed while one exists.
+-- A default partition left by older schemas has its rows moved out when their month is created.
+CREATE OR REPLACE FUNCTION ensure_scan_job_partition(month DATE) RETURNS void AS $$
+DECLARE
+  start_at DATE := date_trunc('month', month)::date;
+  end_at DATE := (date_trunc('month', month) + interval '1 month')::date;
+  part TEXT := 'scan_job_' || to_char(date_trunc('month', month), 'YYYY_MM');
+BEGIN
+  PERFORM pg_advisory_xact_lock(hashtext(part));
+  IF to_regclass(part) IS NOT NULL THEN
+    RETURN;
+  END IF;
+  IF to_regclass('scan_job_default') IS NULL THEN
+    EXECUTE format('CREATE TABLE %I PARTITION OF scan_job FOR VALUES FROM (%L) TO (%L)', part, start_at, end_at);
+    RETURN;
+  END IF;
+  EXECUTE format('CREATE TABLE %I (LIKE scan_job INCLUDING DEFAULTS INCLUDING CONSTRAINTS)', part);
+  EXECUTE format('WITH moved AS (DELETE FROM scan_job_default WHERE created_at >= %L AND created_at < %L RETURNING *) '
+                 'INSERT INTO %I SELECT * FROM moved', start_at, end_at, part);
+  EXECUTE format('ALTER TABLE scan_job ATTACH PARTITION %I FOR VALUES FROM (%L) TO (%L)', part, start_at, end_at);
+END
+$$ LANGUAGE plpgsql;
+
+SELECT ensure_scan_job_partition((date_trunc('month', now()) + i * interval '1 month')::date)
+FROM generate_series(0, 2) AS i;
+
+-- One row per completed scan; compact, no JSON
+CREATE TABLE IF NOT EXISTS pqc_score_history (
+  repo_url TEXT NOT NULL,
+  scored_at TIMESTAMPTZ NOT NULL DEFAULT now(),
+  scan_id UUID NOT NULL,
+  score SMALLINT NOT NULL,
+  findings INT NOT NULL,
+  quantum_vulnerable INT NOT NULL,
+  PRIMARY KEY (repo_url, scored_at, scan_id)
+);
+
+-- Daily rollup per repo, maintained on insert; dashboards read only this
+CREATE TABLE IF NOT EXISTS pqc_score_daily (
+  repo_url TEXT NOT NULL,
+  day DATE NOT NULL,
+  scans INT NOT NULL,
+  score_sum BIGINT NOT NULL,
+  score_min SMALLINT NOT NULL,
+  score_max SMALLINT NOT NULL,
+  last_score SMALLINT NOT NULL,
+  last_scored_at TIMESTAMPTZ NOT NULL,
+  PRIMARY KEY (repo_url, day)
+);
+
+CREATE INDEX IF NOT EXISTS idx_pqc_score_daily_day ON pqc_score_daily (day);
+
+-- Shards of a map-reduce scan (see ShardService); rows live only while their job runs
+CREATE TABLE IF NOT EXISTS scan_shard (
+  job_id UUID NOT NULL,
+  shard_no INT NOT NULL,
+  status TEXT NOT NULL,
+  repo_url TEXT NOT NULL,
+  commit_sha TEXT NOT NULL,
+  workspace TEXT NOT NULL,
+  config TEXT NOT NULL,
+  language TEXT NOT NULL,
+  targets JSONB NOT NULL,
+  attempts INT NOT NULL DEFAULT 0,
+  claimed_by TEXT,
+  claimed_at TIMESTAMPTZ,
+  semgrep_output JSONB,
+  error_message TEXT,
+  created_at TIMESTAMPTZ NOT NULL DEFAULT now(),
+  updated_at TIMESTAMPTZ NOT NULL DEFAULT now(),
+  PRIMARY KEY (job_id, shard_no)
+);
+
+CREATE INDEX IF NOT EXISTS idx_scan_shard_queued ON scan_shard (created_at, shard_no) WHERE status = 'QUEUED';
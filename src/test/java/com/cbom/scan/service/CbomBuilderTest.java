@@ -0,0 +1,149 @@
+package com.cbom.scan.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import com.cbom.scan.service.ReportService.Encoding;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import cyclonedx.v1_6.Bom16.Bom;
+import cyclonedx.v1_6.Bom16.Classification;
+import cyclonedx.v1_6.Bom16.Component;
+import cyclonedx.v1_6.Bom16.CryptoProperties;
+
+class CbomBuilderTest {
+    private static final ObjectMapper M = new ObjectMapper();
+
+    @Test
+    void aggregatedOccurrencesCarryLocationAndLineOnly() throws Exception {
+        ObjectNode semgrep = M.createObjectNode();
+        ArrayNode results = semgrep.putArray("results");
+        for (int i = 1; i <= 50; i++) {
+            hit(results, "java.sha256", "src/F" + i + ".java", i, "MessageDigest.getInstance(\"SHA-256\") // " + i);
+        }
+
+        JsonNode bom = M.readTree(new CbomBuilder(true).fromSemgrep(null, semgrep, "missing.yml"));
+
+        assertThat(bom.path("components")).hasSize(1);
+        JsonNode comp = bom.path("components").get(0);
+        JsonNode occurrences = comp.path("evidence").path("occurrences");
+        assertThat(occurrences).hasSize(50);
+        for (JsonNode o : occurrences) {
+            assertThat(fieldNames(o)).containsExactly("location", "line");
+        }
+        assertThat(property(comp, "exampleSnippet")).containsExactly("MessageDigest.getInstance(\"SHA-256\") // 1");
+        assertThat(property(comp, "occurrenceCount")).containsExactly("50");
+        assertThat(comp.path("description").asText()).isEqualTo("SHA-256 (java.sha256)");
+    }
+
+    @Test
+    void assetTypeIsPartOfTheGroupKey() throws Exception {
+        ObjectNode semgrep = M.createObjectNode();
+        ArrayNode results = semgrep.putArray("results");
+        hit(results, "java.sha256", "a.java", 1, "sha256(payload)");
+        hit(results, "java.sha256", "b.java", 2, "tlsSha256(handshake)");
+        hit(results, "java.sha256", "c.java", 3, "sha256(other)");
+
+        JsonNode bom = M.readTree(new CbomBuilder(true).fromSemgrep(null, semgrep, "missing.yml"));
+
+        List<String> types = new ArrayList<>();
+        for (JsonNode comp : bom.path("components")) {
+            types.add(comp.path("cryptoProperties").path("assetType").asText() + "="
+                    + comp.path("evidence").path("occurrences").size());
+            assertThat(comp.path("bom-ref").asText())
+                    .startsWith("java.sha256@" + comp.path("cryptoProperties").path("assetType").asText() + "/");
+        }
+        assertThat(types).containsExactlyInAnyOrder("algorithm=2", "protocol=1");
+    }
+
+    @Test
+    void perFindingComponentsKeepTheirSnippet() throws Exception {
+        ObjectNode semgrep = M.createObjectNode();
+        hit(semgrep.putArray("results"), "java.aes", "Crypto.java", 7, "Cipher.getInstance(\"AES/GCM/NoPadding\")");
+
+        JsonNode comp = M.readTree(new CbomBuilder().fromSemgrep(null, semgrep, "missing.yml")).path("components")
+                .get(0);
+
+        assertThat(comp.path("bom-ref").asText()).isEqualTo("java.aes@Crypto.java:7");
+        assertThat(comp.path("evidence").path("occurrences").get(0).path("additionalContext").asText())
+                .isEqualTo("Cipher.getInstance(\"AES/GCM/NoPadding\")");
+    }
+
+    @Test
+    void everyEncodingIsWrittenFromTheSameDocument() throws Exception {
+        ObjectNode semgrep = M.createObjectNode();
+        ArrayNode results = semgrep.putArray("results");
+        hit(results, "java.aes", "Crypto.java", 7, "Cipher.getInstance(\"AES/GCM/NoPadding\") // 256");
+        hit(results, "java.rsa", "Keys.java", 12, "KeyPairGenerator.getInstance(\"RSA\")");
+        hit(results, "java.tls", "Net.java", 3, "SSLContext.getInstance(\"TLS\")");
+
+        CbomBuilder.Encoded cbom = new CbomBuilder().build(null, semgrep, "missing.yml", new PqcScorer());
+
+        JsonNode json = M.readTree(cbom.json());
+        assertThat(new ObjectMapper(Encoding.SMILE.factory()).readTree(cbom.smile())).isEqualTo(json);
+        assertThat(new ObjectMapper(Encoding.CBOR.factory()).readTree(cbom.cbor())).isEqualTo(json);
+        assertThat(cbom.smile().length).isLessThan(cbom.json().length());
+
+        Bom bom = Bom.parseFrom(cbom.protobuf());
+        assertThat(bom.getSpecVersion()).isEqualTo("1.6");
+        assertThat(bom.getMetadata().getTimestamp().getSeconds())
+                .isEqualTo(java.time.Instant.parse(json.path("metadata").path("timestamp").asText()).getEpochSecond());
+        assertThat(bom.getMetadata().getTools().getComponents(0).getName()).isEqualTo("Semgrep");
+        assertThat(bom.getComponentsCount()).isEqualTo(3);
+        for (int i = 0; i < 3; i++) {
+            Component c = bom.getComponents(i);
+            JsonNode j = json.path("components").get(i);
+            assertThat(c.getType()).isEqualTo(Classification.CLASSIFICATION_CRYPTOGRAPHIC_ASSET);
+            assertThat(c.getBomRef()).isEqualTo(j.path("bom-ref").asText());
+            assertThat(c.getName()).isEqualTo(j.path("name").asText());
+            assertThat(c.getDescription()).isEqualTo(j.path("description").asText());
+            assertThat(c.getEvidence(0).getOccurrences(0).getLine()).isEqualTo(
+                    j.path("evidence").path("occurrences").get(0).path("line").asInt());
+            assertThat(c.getPropertiesCount()).isEqualTo(j.path("properties").size());
+        }
+        CryptoProperties aes = bom.getComponents(0).getCryptoProperties();
+        assertThat(aes.getAssetType()).isEqualTo(CryptoProperties.CryptoAssetType.CRYPTO_ASSET_TYPE_ALGORITHM);
+        assertThat(aes.getAlgorithmProperties().getPrimitive())
+                .isEqualTo(CryptoProperties.AlgorithmProperties.CryptoPrimitive.CRYPTO_PRIMITIVE_AE);
+        assertThat(aes.getAlgorithmProperties().getMode())
+                .isEqualTo(CryptoProperties.AlgorithmProperties.CryptoAlgorithmMode.CRYPTO_ALGORITHM_MODE_GCM);
+        assertThat(aes.getAlgorithmProperties().getParameterSetIdentifier()).isEqualTo("256");
+        assertThat(bom.getComponents(1).getCryptoProperties().getAlgorithmProperties().getPrimitive())
+                .isEqualTo(CryptoProperties.AlgorithmProperties.CryptoPrimitive.CRYPTO_PRIMITIVE_PKE);
+        assertThat(bom.getComponents(2).getCryptoProperties().getAssetType())
+                .isEqualTo(CryptoProperties.CryptoAssetType.CRYPTO_ASSET_TYPE_PROTOCOL);
+    }
+
+    private static void hit(ArrayNode results, String ruleId, String path, int line, String code) {
+        ObjectNode r = results.addObject();
+        r.put("check_id", ruleId);
+        r.put("path", path);
+        r.putObject("start").put("line", line);
+        ObjectNode extra = r.putObject("extra");
+        extra.put("language", "java");
+        extra.put("lines", code);
+    }
+
+    private static List<String> property(JsonNode comp, String name) {
+        List<String> values = new ArrayList<>();
+        for (JsonNode p : comp.path("properties")) {
+            if (name.equals(p.path("name").asText())) {
+                values.add(p.path("value").asText());
+            }
+        }
+        return values;
+    }
+
+    private static List<String> fieldNames(JsonNode node) {
+        List<String> names = new ArrayList<>();
+        node.fieldNames().forEachRemaining(names::add);
+        return names;
+    }
+}
@@ -0,0 +1,111 @@
+package com.cbom.scan.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.StringReader;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.UUID;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ResultSetExtractor;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+class CbomDiffServiceTest {
+    private static final ObjectMapper M = new ObjectMapper();
+    private static final UUID BASE = UUID.randomUUID();
+    private static final UUID HEAD = UUID.randomUUID();
+
+    @Test
+    void componentsSharingAKeyWithDifferentSnippetsAreUnchanged() throws Exception {
+        ObjectNode base = semgrep();
+        hit(base, "java.sha256", "a.java", 1, "sha256(first)");
+        hit(base, "java.sha256", "b.java", 2, "sha256(second)");
+        ObjectNode head = semgrep();
+        hit(head, "java.sha256", "b.java", 2, "sha256(second)");
+        hit(head, "java.sha256", "a.java", 1, "sha256(first)");
+
+        JsonNode diff = diff(new CbomBuilder().fromSemgrep(null, base, "missing.yml"),
+                new CbomBuilder().fromSemgrep(null, head, "missing.yml"));
+
+        assertThat(diff.path("summary").toString())
+                .isEqualTo("{\"added\":0,\"removed\":0,\"changed\":0,\"unchanged\":1}");
+    }
+
+    @Test
+    void aggregatedAndPerFindingCompareTheSame() throws Exception {
+        ObjectNode scan = semgrep();
+        hit(scan, "java.aes", "a.java", 1, "Cipher.getInstance(\"AES/GCM/NoPadding\")");
+        hit(scan, "java.aes", "b.java", 5, "Cipher.getInstance(\"AES/GCM/NoPadding\") // again");
+
+        JsonNode diff = diff(new CbomBuilder().fromSemgrep(null, scan, "missing.yml"),
+                new CbomBuilder(true).fromSemgrep(null, scan, "missing.yml"));
+
+        assertThat(diff.path("summary").path("unchanged").asInt()).isEqualTo(1);
+        assertThat(diff.path("summary").path("changed").asInt()).isZero();
+    }
+
+    @Test
+    void severityChangesAndMovedOccurrencesAreReported() throws Exception {
+        ObjectNode base = semgrep();
+        hit(base, "java.sha256", "a.java", 1, "sha256(x)");
+        ObjectNode head = semgrep();
+        hit(head, "java.sha256", "a.java", 9, "sha256(x)");
+        hit(head, "java.md5", "c.java", 3, "md5(x)");
+        String headCbom = new CbomBuilder().fromSemgrep(null, head, "missing.yml");
+        ObjectNode headBom = (ObjectNode) M.readTree(headCbom);
+        for (JsonNode comp : headBom.path("components")) {
+            ((ArrayNode) comp.path("properties")).addObject().put("name", "severity").put("value", "ERROR");
+        }
+
+        JsonNode diff = diff(new CbomBuilder().fromSemgrep(null, base, "missing.yml"), headBom.toString());
+
+        assertThat(diff.path("added")).hasSize(1);
+        assertThat(diff.path("added").get(0).path("key").asText()).startsWith("java.md5@");
+        JsonNode changed = diff.path("changed").get(0);
+        assertThat(changed.has("severity")).isFalse();
+        assertThat(changed.path("headSeverity").asText()).isEqualTo("ERROR");
+        assertThat(changed.path("addedOccurrences").toString()).isEqualTo("[\"a.java:9\"]");
+        assertThat(changed.path("removedOccurrences").toString()).isEqualTo("[\"a.java:1\"]");
+    }
+
+    private static JsonNode diff(String baseCbom, String headCbom) {
+        Map<UUID, String> cboms = Map.of(BASE, baseCbom, HEAD, headCbom);
+        JdbcTemplate jdbc = new JdbcTemplate() {
+            @Override
+            public <T> T query(String sql, ResultSetExtractor<T> rse, Object... args) {
+                try {
+                    ResultSet rs = mock(ResultSet.class);
+                    when(rs.next()).thenReturn(true);
+                    when(rs.getCharacterStream(1)).thenReturn(new StringReader(cboms.get((UUID) args[0])));
+                    return rse.extractData(rs);
+                } catch (SQLException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        };
+        return new CbomDiffService(jdbc).diff(BASE, HEAD, 100).orElseThrow();
+    }
+
+    private static ObjectNode semgrep() {
+        ObjectNode semgrep = M.createObjectNode();
+        semgrep.putArray("results");
+        return semgrep;
+    }
+
+    private static void hit(ObjectNode semgrep, String ruleId, String path, int line, String code) {
+        ObjectNode r = ((ArrayNode) semgrep.get("results")).addObject();
+        r.put("check_id", ruleId);
+        r.put("path", path);
+        r.putObject("start").put("line", line);
+        r.putObject("extra").put("lines", code);
+    }
+}
@@ -0,0 +1,175 @@
+package com.cbom.scan.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Base64;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.cbom.scan.service.FileClassifier.Reason;
+
+class FileClassifierTest {
+    @TempDir
+    Path root;
+
+    private final FileClassifier classifier = new FileClassifier(true,
+            List.of("generated", "vendored", "minified", "oversized"), 64, List.of("js=16"), 200, 5.8);
+
+    @Test
+    void generatorMarkersInLeadingComments() throws IOException {
+        write("api/service.go", "// Code generated by protoc-gen-go. DO NOT EDIT.\n\npackage api\n");
+        write("mock/mock.go", "// Copyright 2024 The Authors.\n// SPDX-License-Identifier: Apache-2.0\n\n"
+                + "// Code generated by MockGen. DO NOT EDIT.\n// Source: crypto.go\n\npackage mock\n");
+        write("web/schema.js", "/**\n * Copyright (c) Meta Platforms, Inc.\n *\n * @generated SignedSource<<abc>>\n */\n"
+                + "export const x = 1;\n");
+        write("py/messages.py", "# -*- coding: utf-8 -*-\n# Generated by the protocol buffer compiler.  DO NOT EDIT!\n"
+                + "# source: messages.proto\nimport sys\n");
+        write("cs/Reference.cs", "\uFEFF//------------------------------------------------------------\n"
+                + "// <auto-generated>\n//     This code was generated by a tool.\n// </auto-generated>\n"
+                + "//------------------------------------------------------------\nnamespace Service {}\n");
+
+        FileClassifier.Stats stats = classifier.prune(root);
+
+        assertThat(stats.files()).containsEntry(Reason.GENERATED, 5);
+        assertThat(root.resolve("api/service.go")).doesNotExist();
+        assertThat(root.resolve("mock/mock.go")).doesNotExist();
+        assertThat(root.resolve("web/schema.js")).doesNotExist();
+        assertThat(root.resolve("py/messages.py")).doesNotExist();
+        assertThat(root.resolve("cs/Reference.cs")).doesNotExist();
+    }
+
+    @Test
+    void markersOutsideLeadingCommentsOrUnanchoredAreIgnored() throws IOException {
+        write("Crypto.java", "// auto-generated IV for each message\nclass Crypto {}\n");
+        write("Tool.java", "// This tool is autogenerated-friendly; do not edit this file by hand\nclass Tool {}\n");
+        write("after.go", "package after\n\n// Code generated by hand. DO NOT EDIT.\n");
+        write("inline.go", "// Note: Code generated by x. DO NOT EDIT. (copied from elsewhere)\npackage inline\n");
+        write("lower.go", "// code generated by x. do not edit.\npackage lower\n");
+        write("Literal.java", "class Literal {\n  String tag = \"@generated\";\n}\n");
+
+        FileClassifier.Stats stats = classifier.prune(root);
+
+        assertThat(stats.total()).isZero();
+        assertThat(root.resolve("Crypto.java")).exists();
+        assertThat(root.resolve("Tool.java")).exists();
+        assertThat(root.resolve("after.go")).exists();
+        assertThat(root.resolve("inline.go")).exists();
+        assertThat(root.resolve("lower.go")).exists();
+        assertThat(root.resolve("Literal.java")).exists();
+    }
+
+    @Test
+    void leadingCommentsStopAtFirstCodeLine() {
+        assertThat(FileClassifier.leadingComments("#!/bin/sh\n\n# @generated\nset -e\n# not a header\n"))
+                .containsExactly("/bin/sh", "@generated");
+        assertThat(FileClassifier.leadingComments("/* one */\n/*\n two\n * three\n */\n<!-- four -->\ncode\n"))
+                .containsExactly("one", "", "two", "three", "", "four");
+    }
+
+    @Test
+    void deeperGitattributesAndLaterLinesWin() throws IOException {
+        write(".gitattributes", "*.java linguist-generated\ngen/** linguist-generated\n"
+                + "gen/Manual.java linguist-generated=false\nthird_party/** linguist-vendored\n");
+        write("Root.java", "class Root {}\n");
+        write("gen/Auto.java", "class Auto {}\n");
+        write("gen/Manual.java", "class Manual {}\n");
+        write("src/.gitattributes", "Keep.java -linguist-generated\n");
+        write("src/Keep.java", "class Keep {}\n");
+        write("src/Other.java", "class Other {}\n");
+        write("third_party/lib/Lib.go", "package lib\n");
+        // an explicit "not generated" beats the generator file name
+        write("proto/.gitattributes", "*.pb.go !linguist-generated\n");
+        write("proto/api.pb.go", "package proto\n");
+
+        FileClassifier.Stats stats = classifier.prune(root);
+
+        assertThat(stats.files()).containsEntry(Reason.GENERATED, 3).containsEntry(Reason.VENDORED, 1);
+        assertThat(root.resolve("Root.java")).doesNotExist();
+        assertThat(root.resolve("gen/Auto.java")).doesNotExist();
+        assertThat(root.resolve("src/Other.java")).doesNotExist();
+        assertThat(root.resolve("third_party/lib/Lib.go")).doesNotExist();
+        assertThat(root.resolve("gen/Manual.java")).exists();
+        assertThat(root.resolve("src/Keep.java")).exists();
+        assertThat(root.resolve("proto/api.pb.go")).exists();
+        assertThat(root.resolve(".gitattributes")).exists();
+    }
+
+    @Test
+    void longLinesAndRandomBytesAreMinified() throws IOException {
+        write("dist/app.js", "var a=1;".repeat(1000));
+        write("vendor.min.js", "x");
+        Random random = new Random(42);
+        StringBuilder blob = new StringBuilder();
+        while (blob.length() < 8192) {
+            byte[] bytes = new byte[112];
+            random.nextBytes(bytes);
+            blob.append(Base64.getEncoder().encodeToString(bytes)).append('\n');
+        }
+        write("keys.txt", blob.toString());
+
+        FileClassifier.Stats stats = classifier.prune(root);
+
+        assertThat(stats.files()).containsEntry(Reason.MINIFIED, 3);
+        assertThat(root.resolve("dist/app.js")).doesNotExist();
+        assertThat(root.resolve("vendor.min.js")).doesNotExist();
+        assertThat(root.resolve("keys.txt")).doesNotExist();
+    }
+
+    @Test
+    void ordinaryCodeIsKept() throws IOException {
+        String sentence = "String message = \"the quick brown fox jumps over the lazy dog\" + value.toString()"
+                + " + other.describe(); // keep\n";
+        write("Long.java", sentence.repeat(60));
+        write("short.js", "var a=1;".repeat(100)); // under 1 KB: too little to judge
+        write("Plain.java", "class Plain {\n    int x;\n}\n".repeat(50));
+
+        FileClassifier.Stats stats = classifier.prune(root);
+
+        assertThat(stats.total()).isZero();
+        assertThat(root.resolve("Long.java")).exists();
+        assertThat(root.resolve("short.js")).exists();
+        assertThat(root.resolve("Plain.java")).exists();
+    }
+
+    @Test
+    void sizeCapsPerExtension() throws IOException {
+        String line = "int value = compute(input, 42);\n";
+        write("big.js", line.repeat(20 * 1024 / line.length()));
+        write("big.java", line.repeat(20 * 1024 / line.length()));
+        write("huge.java", line.repeat(80 * 1024 / line.length()));
+
+        FileClassifier.Stats stats = classifier.prune(root);
+
+        assertThat(stats.files()).containsEntry(Reason.OVERSIZED, 2);
+        assertThat(stats.bytes()).isGreaterThan(90 * 1024);
+        assertThat(root.resolve("big.js")).doesNotExist();
+        assertThat(root.resolve("huge.java")).doesNotExist();
+        assertThat(root.resolve("big.java")).exists();
+    }
+
+    @Test
+    void disabledReasonsKeepTheirFiles() throws IOException {
+        FileClassifier generatedOnly = new FileClassifier(true, List.of("generated"), 64, List.of(), 200, 5.8);
+        write("api.pb.go", "package api\n");
+        write("app.min.js", "x");
+
+        FileClassifier.Stats stats = generatedOnly.prune(root);
+
+        assertThat(stats.total()).isEqualTo(1);
+        assertThat(root.resolve("api.pb.go")).doesNotExist();
+        assertThat(root.resolve("app.min.js")).exists();
+    }
+
+    private void write(String relative, String content) throws IOException {
+        Path file = root.resolve(relative);
+        Files.createDirectories(file.getParent());
+        Files.writeString(file, content, StandardCharsets.UTF_8);
+    }
+}